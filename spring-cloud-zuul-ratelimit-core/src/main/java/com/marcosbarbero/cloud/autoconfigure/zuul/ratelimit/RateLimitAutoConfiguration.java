@@ -23,9 +23,14 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitKeyG
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BatchingRedisRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BlockedKeys;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BlockedKeysRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.ConsulRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.DefaultRateLimiterErrorHandler;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.InMemoryRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RateLimiterErrorHandler;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.ReactiveRedisRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RedisRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jHazelcastRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jIgniteRateLimiter;
@@ -33,10 +38,12 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bu
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jJCacheRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata.JpaRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata.RateLimiterRepository;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.RateLimitEarlyRejectFilter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.RateLimitPostFilter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.RateLimitPreFilter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DefaultRateLimitKeyGenerator;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DefaultRateLimitUtils;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DenyListFile;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.SecuredRateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.StringToMatchTypeConverter;
 import com.netflix.zuul.ZuulFilter;
@@ -47,7 +54,9 @@ import io.github.bucket4j.grid.infinispan.Infinispan;
 import io.github.bucket4j.grid.jcache.JCache;
 import org.apache.ignite.IgniteCache;
 import org.infinispan.functional.FunctionalMap.ReadWriteMap;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.AnyNestedCondition;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
@@ -55,13 +64,19 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.boot.context.properties.ConfigurationPropertiesBinding;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.cloud.consul.ConditionalOnConsulEnabled;
 import org.springframework.cloud.netflix.zuul.filters.RouteLocator;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Conditional;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ConfigurationCondition;
+import org.springframework.core.Ordered;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.util.UrlPathHelper;
 
@@ -95,17 +110,87 @@ public class RateLimitAutoConfiguration {
     @Bean
     public ZuulFilter rateLimiterPreFilter(final RateLimiter rateLimiter, final RateLimitProperties rateLimitProperties,
                                            final RouteLocator routeLocator, final RateLimitKeyGenerator rateLimitKeyGenerator,
-                                           final RateLimitUtils rateLimitUtils, final ApplicationEventPublisher eventPublisher) {
-        return new RateLimitPreFilter(rateLimitProperties, routeLocator, URL_PATH_HELPER, rateLimiter,
-                rateLimitKeyGenerator, rateLimitUtils, eventPublisher);
+                                           final RateLimitUtils rateLimitUtils, final ApplicationEventPublisher eventPublisher,
+                                           final ObjectProvider<DenyListFile> denyListFile,
+                                           final ObjectProvider<BlockedKeys> blockedKeys) {
+        return new RateLimitPreFilter(rateLimitProperties, routeLocator, URL_PATH_HELPER,
+                withBlockedKeys(rateLimiter, rateLimitProperties, blockedKeys), rateLimitKeyGenerator, rateLimitUtils,
+                eventPublisher, denyListFile.getIfAvailable(),
+                rateLimitProperties.isEarlyReject() ? blockedKeys.getIfAvailable() : null);
     }
 
     @Bean
     public ZuulFilter rateLimiterPostFilter(final RateLimiter rateLimiter, final RateLimitProperties rateLimitProperties,
                                             final RouteLocator routeLocator, final RateLimitKeyGenerator rateLimitKeyGenerator,
-                                            final RateLimitUtils rateLimitUtils) {
-        return new RateLimitPostFilter(rateLimitProperties, routeLocator, URL_PATH_HELPER, rateLimiter,
-                rateLimitKeyGenerator, rateLimitUtils);
+                                            final RateLimitUtils rateLimitUtils,
+                                            final ObjectProvider<DenyListFile> denyListFile,
+                                            final ObjectProvider<BlockedKeys> blockedKeys) {
+        return new RateLimitPostFilter(rateLimitProperties, routeLocator, URL_PATH_HELPER,
+                withBlockedKeys(rateLimiter, rateLimitProperties, blockedKeys), rateLimitKeyGenerator, rateLimitUtils,
+                denyListFile.getIfAvailable());
+    }
+
+    @Bean
+    @Conditional(BlockedKeysCondition.class)
+    public BlockedKeys blockedKeys(final RateLimitProperties rateLimitProperties) {
+        final Integer maxSize = rateLimitProperties.getBlockedKeysCacheSize();
+        return new BlockedKeys(maxSize != null ? maxSize : BlockedKeys.DEFAULT_MAX_SIZE);
+    }
+
+    private static RateLimiter withBlockedKeys(final RateLimiter rateLimiter, final RateLimitProperties rateLimitProperties,
+                                               final ObjectProvider<BlockedKeys> blockedKeys) {
+        final BlockedKeys keys = blockedKeys.getIfAvailable();
+        return keys != null && rateLimitProperties.getBlockedKeysCacheSize() != null
+                ? new BlockedKeysRateLimiter(rateLimiter, keys) : rateLimiter;
+    }
+
+    /**
+     * The blocked keys are shared by the rate limiters answering for the keys over their limit and the early reject
+     * filter, either one needs them.
+     */
+    static class BlockedKeysCondition extends AnyNestedCondition {
+
+        BlockedKeysCondition() {
+            super(ConfigurationCondition.ConfigurationPhase.REGISTER_BEAN);
+        }
+
+        @ConditionalOnProperty(prefix = PREFIX, name = "blocked-keys-cache-size")
+        static class OnBlockedKeysCacheSize {
+        }
+
+        @ConditionalOnProperty(prefix = PREFIX, name = "early-reject", havingValue = "true")
+        static class OnEarlyReject {
+        }
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = PREFIX, name = "deny-request.file")
+    public DenyListFile denyListFile(final RateLimitProperties rateLimitProperties) {
+        final RateLimitProperties.DenyRequest denyRequest = rateLimitProperties.getDenyRequest();
+        return new DenyListFile(denyRequest.getFile(), denyRequest.getFileCheckInterval());
+    }
+
+    @Configuration
+    @ConditionalOnProperty(prefix = PREFIX, name = "early-reject", havingValue = "true")
+    public static class EarlyRejectConfiguration {
+
+        @Bean
+        public RateLimitEarlyRejectFilter rateLimitEarlyRejectFilter(final RateLimitProperties rateLimitProperties,
+                                                                     final RateLimitUtils rateLimitUtils,
+                                                                     final BlockedKeys blockedKeys,
+                                                                     final ObjectProvider<DenyListFile> denyListFile) {
+            return new RateLimitEarlyRejectFilter(rateLimitProperties, URL_PATH_HELPER, rateLimitUtils,
+                    blockedKeys, denyListFile.getIfAvailable());
+        }
+
+        @Bean
+        public FilterRegistrationBean<RateLimitEarlyRejectFilter> rateLimitEarlyRejectFilterRegistration(
+                final RateLimitEarlyRejectFilter rateLimitEarlyRejectFilter) {
+            final FilterRegistrationBean<RateLimitEarlyRejectFilter> registration =
+                    new FilterRegistrationBean<>(rateLimitEarlyRejectFilter);
+            registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+            return registration;
+        }
     }
 
     @Bean
@@ -146,9 +231,27 @@ public class RateLimitAutoConfiguration {
         }
 
         @Bean
+        @ConditionalOnProperty(prefix = PREFIX, name = "redis.async", havingValue = "false", matchIfMissing = true)
         public RateLimiter redisRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
-                                            @Qualifier(REDIS_TEMPLATE_BEAN_NAME) final StringRedisTemplate redisTemplate) {
-            return new RedisRateLimiter(rateLimiterErrorHandler, redisTemplate);
+                                            @Qualifier(REDIS_TEMPLATE_BEAN_NAME) final StringRedisTemplate redisTemplate,
+                                            final RateLimitProperties properties) {
+            final RateLimitProperties.Redis redis = properties.getRedis();
+            if (redis.getBatchWindow() != null) {
+                return new BatchingRedisRateLimiter(rateLimiterErrorHandler, redisTemplate, redis.getCounterShards(),
+                        redis.getBatchWindow(), redis.getBatchSize(), redis.getBatchTimeout());
+            }
+            return new RedisRateLimiter(rateLimiterErrorHandler, redisTemplate, redis.getCounterShards());
+        }
+
+        @Bean
+        @ConditionalOnProperty(prefix = PREFIX, name = "redis.async", havingValue = "true")
+        public RateLimiter reactiveRedisRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
+                                                    @Qualifier(REDIS_TEMPLATE_BEAN_NAME) final StringRedisTemplate redisTemplate,
+                                                    final ReactiveRedisConnectionFactory reactiveConnectionFactory,
+                                                    final RateLimitProperties properties) {
+            return new ReactiveRedisRateLimiter(rateLimiterErrorHandler, redisTemplate,
+                    new ReactiveStringRedisTemplate(reactiveConnectionFactory), properties.getRedis().getCounterShards(),
+                    properties.getRedis().getAsyncTimeout());
         }
     }
 
@@ -229,4 +332,16 @@ public class RateLimitAutoConfiguration {
 
     }
 
+    @Configuration
+    @ConditionalOnMissingBean(RateLimiter.class)
+    @ConditionalOnProperty(prefix = PREFIX, name = "repository", havingValue = "IN_MEMORY")
+    public static class InMemoryConfiguration {
+
+        @Bean
+        public RateLimiter inMemoryRateLimiter(final RateLimitProperties rateLimitProperties) {
+            return new InMemoryRateLimiter(rateLimitProperties.getInMemory().getMaxSize());
+        }
+
+    }
+
 }
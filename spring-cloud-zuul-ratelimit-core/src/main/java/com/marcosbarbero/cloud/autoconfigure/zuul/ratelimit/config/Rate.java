@@ -21,12 +21,15 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Transient;
 import java.util.Date;
 
 /**
  * Represents a view of rate limit in a giving time for a user. <p> limit - How many requests can be executed by the
  * user. Maps to X-RateLimit-Limit header remaining - How many requests are still left on the current window. Maps to
  * X-RateLimit-Remaining header reset - Epoch when the rate is replenished by limit. Maps to X-RateLimit-Reset header
+ * previousRemaining - What was left on the previous window, kept by the sliding window policies. It is not mapped, the
+ * JPA repository stores it as a separate rate.
  *
  * @author Marcos Barbero
  * @author Liel Chayoun
@@ -42,6 +45,10 @@ public class Rate {
     private Long reset;
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "dd-MM-yyyy HH:mm:ss")
     private Date expiration;
+    @Transient
+    private Long previousRemaining;
+    @Transient
+    private Long previousRemainingQuota;
 
     public Rate() {
     }
@@ -93,4 +100,20 @@ public class Rate {
     public void setExpiration(Date expiration) {
         this.expiration = expiration;
     }
+
+    public Long getPreviousRemaining() {
+        return previousRemaining;
+    }
+
+    public void setPreviousRemaining(Long previousRemaining) {
+        this.previousRemaining = previousRemaining;
+    }
+
+    public Long getPreviousRemainingQuota() {
+        return previousRemainingQuota;
+    }
+
+    public void setPreviousRemainingQuota(Long previousRemainingQuota) {
+        this.previousRemainingQuota = previousRemainingQuota;
+    }
 }
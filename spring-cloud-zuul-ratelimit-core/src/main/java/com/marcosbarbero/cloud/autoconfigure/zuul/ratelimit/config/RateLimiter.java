@@ -18,6 +18,9 @@ package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config;
 
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author Marcos Barbero
  * @author Liel Chayoun
@@ -27,11 +30,45 @@ public interface RateLimiter {
     String QUOTA_SUFFIX = "-quota";
 
     /**
+     * Accounts a request against a policy. It is called twice per request: before routing with a {@code null}
+     * {@code requestTime}, which consumes one request from the limit and only reads (peeks) the quota, and after
+     * routing with the time the request took, which is added to the quota while the limit is left untouched.
+     * Implementations should skip the backend entirely for a counter the policy does not define.
+     *
      * @param policy      Template for which rates should be created in case there's no rate limit associated with the
      *                    key
      * @param key         Unique key that identifies a request
-     * @param requestTime The total time it took to handle the request
+     * @param requestTime The total time it took to handle the request, {@code null} when counting a new request
      * @return a view of a user's rate request limit
      */
     Rate consume(Policy policy, String key, Long requestTime);
+
+    /**
+     * Consumes all the policies matched by a single request. When counting a new request ({@code requestTime} is
+     * {@code null}) the policies after the first one exceeding its limit or quota are not consumed, so the returned
+     * list may be shorter than the given policies. Implementations backed by a remote storage are expected to
+     * override it to evaluate all the policies in a single round trip.
+     *
+     * @param policies    Templates for which rates should be created, in evaluation order
+     * @param keys        Unique keys that identify the request, one per policy
+     * @param requestTime The total time it took to handle the request
+     * @return a view of a user's rate request limit for each consumed policy
+     */
+    default List<Rate> consume(List<Policy> policies, List<String> keys, Long requestTime) {
+        final List<Rate> rates = new ArrayList<>(policies.size());
+        for (int i = 0; i < policies.size(); i++) {
+            final Policy policy = policies.get(i);
+            final Rate rate = consume(policy, keys.get(i), requestTime);
+            rates.add(rate);
+            if (requestTime == null && isExceeded(policy, rate)) {
+                break;
+            }
+        }
+        return rates;
+    }
+
+    private static boolean isExceeded(Policy policy, Rate rate) {
+        return (policy.getLimit() != null && rate.getRemaining() < 0)
+                || (policy.getQuota() != null && rate.getRemainingQuota() < 0);
+    }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties;
+
+/**
+ * Enum with the algorithms a policy can be enforced with.
+ */
+public enum RateLimitAlgorithm {
+    /**
+     * Counts the requests and the request time within a window restarting every refresh interval.
+     */
+    FIXED_WINDOW,
+
+    /**
+     * Generic cell rate algorithm: keeps a single theoretical arrival time per key, spreading the limit evenly over
+     * the refresh interval while still allowing a burst of the whole limit. Only supported by the REDIS repository,
+     * the other ones fall back to a fixed window.
+     */
+    GCRA,
+
+    /**
+     * Sliding window counter: adds to the count of the current window the count of the previous one, weighted by how
+     * much of the previous window still overlaps the sliding interval ending now. Supported by the REDIS, IN_MEMORY,
+     * JPA and CONSUL repositories, the other ones fall back to a fixed window.
+     */
+    SLIDING_WINDOW,
+}
@@ -21,6 +21,7 @@ import com.google.common.collect.Maps;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.validators.Policies;
 import org.apache.commons.lang3.StringUtils;
+import org.hibernate.validator.constraints.time.DurationMin;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.DeprecatedConfigurationProperty;
@@ -34,6 +35,9 @@ import org.springframework.validation.annotation.Validated;
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.PositiveOrZero;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
@@ -69,15 +73,52 @@ public class RateLimitProperties {
 
     private boolean behindProxy;
 
+    /**
+     * Number of proxies in front of the gateway which append to the X-Forwarded-For header. The client address is the
+     * entry that many positions from the right of the header, or its leftmost entry when the header is shorter. Zero
+     * keeps taking the leftmost entry, which any client can forge.
+     */
+    @PositiveOrZero
+    private int trustedProxyDepth;
+
     private boolean enabled;
 
     @NotNull
     private ResponseHeadersVerbosity responseHeaders = VERBOSE;
 
+    /**
+     * How the denied and rate limited requests are rejected. RESPONSE writes a prebuilt body with the status code
+     * straight from the filters, which saves the exception and the Zuul error handling when most requests are rejected.
+     */
+    @NotNull
+    private RejectionMode rejectionMode = RejectionMode.EXCEPTION;
+
     @NotNull
     @Value("${spring.application.name:rate-limit-application}")
     private String keyPrefix;
 
+    /**
+     * Replaces the client part of the keys (the values of the policy types) with its 128 bits hash, so the stored keys
+     * have a fixed width whatever the length of the values. The original value of each key is logged at debug level.
+     */
+    private boolean compactKeys;
+
+    /**
+     * Adds a servlet filter ahead of Zuul which rejects the denied origins, and the requests this node already
+     * rejected with 429 until their counter resets, before any Zuul processing. Only the policies keyed on nothing
+     * but the origin, url and http method make a request rejected early. The rejected requests are kept with the
+     * blocked keys.
+     */
+    private boolean earlyReject;
+
+    /**
+     * Maximum number of keys over their limit or quota remembered by each gateway node, which answers for them without
+     * calling the repository until their counter resets. Disabled when not set. It also bounds the requests kept for
+     * the early reject filter, 100000 when not set.
+     */
+    @Positive
+    private Integer blockedKeysCacheSize;
+
     @NotNull
     private RateLimitRepository repository;
 
@@ -85,9 +126,18 @@ public class RateLimitProperties {
 
     private int preFilterOrder = FORM_BODY_WRAPPER_FILTER_ORDER;
 
+    @Valid
     @NestedConfigurationProperty
     private DenyRequest denyRequest = new DenyRequest();
 
+    @Valid
+    @NestedConfigurationProperty
+    private InMemory inMemory = new InMemory();
+
+    @Valid
+    @NestedConfigurationProperty
+    private Redis redis = new Redis();
+
     public List<Policy> getPolicies(String key) {
         return policyList.getOrDefault(key, defaultPolicyList);
     }
@@ -116,6 +166,14 @@ public class RateLimitProperties {
         this.behindProxy = behindProxy;
     }
 
+    public int getTrustedProxyDepth() {
+        return trustedProxyDepth;
+    }
+
+    public void setTrustedProxyDepth(int trustedProxyDepth) {
+        this.trustedProxyDepth = trustedProxyDepth;
+    }
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -148,6 +206,14 @@ public class RateLimitProperties {
         this.responseHeaders = responseHeaders;
     }
 
+    public RejectionMode getRejectionMode() {
+        return rejectionMode;
+    }
+
+    public void setRejectionMode(RejectionMode rejectionMode) {
+        this.rejectionMode = rejectionMode;
+    }
+
     public String getKeyPrefix() {
         return keyPrefix;
     }
@@ -156,6 +222,30 @@ public class RateLimitProperties {
         this.keyPrefix = keyPrefix;
     }
 
+    public boolean isEarlyReject() {
+        return earlyReject;
+    }
+
+    public void setEarlyReject(boolean earlyReject) {
+        this.earlyReject = earlyReject;
+    }
+
+    public Integer getBlockedKeysCacheSize() {
+        return blockedKeysCacheSize;
+    }
+
+    public void setBlockedKeysCacheSize(Integer blockedKeysCacheSize) {
+        this.blockedKeysCacheSize = blockedKeysCacheSize;
+    }
+
+    public boolean isCompactKeys() {
+        return compactKeys;
+    }
+
+    public void setCompactKeys(boolean compactKeys) {
+        this.compactKeys = compactKeys;
+    }
+
     public RateLimitRepository getRepository() {
         return repository;
     }
@@ -188,6 +278,22 @@ public class RateLimitProperties {
         this.denyRequest = denyRequest;
     }
 
+    public InMemory getInMemory() {
+        return inMemory;
+    }
+
+    public void setInMemory(InMemory inMemory) {
+        this.inMemory = inMemory;
+    }
+
+    public Redis getRedis() {
+        return redis;
+    }
+
+    public void setRedis(Redis redis) {
+        this.redis = redis;
+    }
+
     public static class Policy {
         /**
          * Refresh interval window (in seconds).
@@ -209,6 +315,17 @@ public class RateLimitProperties {
 
         private boolean breakOnMatch;
 
+        /**
+         * Algorithm used to enforce the limit and quota.
+         */
+        @NotNull
+        private RateLimitAlgorithm algorithm = RateLimitAlgorithm.FIXED_WINDOW;
+
+        /**
+         * Overrides the compact keys setting for the keys of this policy, the global one applies when not set.
+         */
+        private Boolean compactKeys;
+
         @Valid
         @NotNull
         @NestedConfigurationProperty
@@ -246,6 +363,22 @@ public class RateLimitProperties {
             this.breakOnMatch = breakOnMatch;
         }
 
+        public RateLimitAlgorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public void setAlgorithm(RateLimitAlgorithm algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public Boolean getCompactKeys() {
+            return compactKeys;
+        }
+
+        public void setCompactKeys(Boolean compactKeys) {
+            this.compactKeys = compactKeys;
+        }
+
         public List<MatchType> getType() {
             return type;
         }
@@ -307,6 +440,19 @@ public class RateLimitProperties {
          */
         private int responseStatusCode = HttpStatus.FORBIDDEN.value();
 
+        /**
+         * Text file listing more origins to deny, one per line; it is reloaded in the background when it changes,
+         * without refreshing the context.
+         */
+        private Path file;
+
+        /**
+         * Interval between the checks of the deny list file for changes.
+         */
+        @NotNull
+        @DurationMin(millis = 1)
+        private Duration fileCheckInterval = Duration.ofSeconds(10);
+
         public List<String> getOrigins() {
             return origins;
         }
@@ -322,5 +468,144 @@ public class RateLimitProperties {
         public void setResponseStatusCode(int responseStatusCode) {
             this.responseStatusCode = responseStatusCode;
         }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public void setFile(Path file) {
+            this.file = file;
+        }
+
+        public Duration getFileCheckInterval() {
+            return fileCheckInterval;
+        }
+
+        public void setFileCheckInterval(Duration fileCheckInterval) {
+            this.fileCheckInterval = fileCheckInterval;
+        }
+    }
+
+    public static class InMemory {
+
+        /**
+         * Maximum number of rate limit windows kept in memory, expired windows are evicted first when it is reached.
+         */
+        @Positive
+        private int maxSize = 100_000;
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    public static class Redis {
+
+        /**
+         * Wraps the client part of the keys in a Redis Cluster hash tag, e.g. prefix:route:{origin}, so the limit and
+         * quota counters of a client are stored in the same slot. Keys without a client part tag the route instead.
+         */
+        private boolean hashTag;
+
+        /**
+         * Number of sub-counters the counters of route wide policies (no type or only url, url pattern and http
+         * method types) are split into. Each request updates a random one against its share of the limit, so a
+         * route's traffic is spread over several cluster shards at the cost of an approximate limit.
+         */
+        @Positive
+        private int counterShards = 1;
+
+        /**
+         * Sends the script calls through the non blocking Lettuce driver, all the calls of a request at once, instead
+         * of one blocking call after the other. Requires Lettuce.
+         */
+        private boolean async;
+
+        /**
+         * Maximum time a request waits for the replies of its script calls in async mode, the calls not replied to by
+         * then get the fallback reply.
+         */
+        @NotNull
+        private Duration asyncTimeout = Duration.ofSeconds(1);
+
+        /**
+         * Time the script calls of concurrent requests are gathered for before being sent as one pipelined batch,
+         * e.g. 200us. Disabled when not set; ignored on Redis Cluster and in async mode.
+         */
+        private Duration batchWindow;
+
+        /**
+         * Maximum number of script calls sent in one pipelined batch, a full batch is sent without waiting for the
+         * end of the batch window.
+         */
+        @Positive
+        private int batchSize = 128;
+
+        /**
+         * Maximum time a request waits for the reply of its pipelined batch, the request makes its own script call
+         * when it is reached.
+         */
+        @NotNull
+        private Duration batchTimeout = Duration.ofSeconds(1);
+
+        public boolean isHashTag() {
+            return hashTag;
+        }
+
+        public void setHashTag(boolean hashTag) {
+            this.hashTag = hashTag;
+        }
+
+        public int getCounterShards() {
+            return counterShards;
+        }
+
+        public void setCounterShards(int counterShards) {
+            this.counterShards = counterShards;
+        }
+
+        public boolean isAsync() {
+            return async;
+        }
+
+        public void setAsync(boolean async) {
+            this.async = async;
+        }
+
+        public Duration getAsyncTimeout() {
+            return asyncTimeout;
+        }
+
+        public void setAsyncTimeout(Duration asyncTimeout) {
+            this.asyncTimeout = asyncTimeout;
+        }
+
+        public Duration getBatchWindow() {
+            return batchWindow;
+        }
+
+        public void setBatchWindow(Duration batchWindow) {
+            this.batchWindow = batchWindow;
+        }
+
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        public Duration getBatchTimeout() {
+            return batchTimeout;
+        }
+
+        public void setBatchTimeout(Duration batchTimeout) {
+            this.batchTimeout = batchTimeout;
+        }
     }
 }
@@ -57,4 +57,9 @@ public enum RateLimitRepository {
      * Uses Bucket4j Infinispan as data storage
      */
     BUCKET4J_INFINISPAN,
+
+    /**
+     * Uses the local JVM memory as data storage, the limits are not shared across nodes
+     */
+    IN_MEMORY,
 }
@@ -17,10 +17,12 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties;
 
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.CidrTrie;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.ClientAddress;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RequestIdentity;
 import java.util.Optional;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.net.util.SubnetUtils;
 import org.springframework.cloud.netflix.zuul.filters.Route;
 import org.springframework.util.AntPathMatcher;
 
@@ -31,16 +33,12 @@ public enum RateLimitType {
     ORIGIN {
         @Override
         public boolean apply(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            if (matcher.contains("/")) {
-                SubnetUtils subnetUtils = new SubnetUtils(matcher);
-                return subnetUtils.getInfo().isInRange(rateLimitUtils.getRemoteAddress(request));
-            }
-            return matcher.equals(rateLimitUtils.getRemoteAddress(request));
+            return CidrTrie.matches(matcher, ClientAddress.of(request, rateLimitUtils));
         }
 
         @Override
         public String key(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return rateLimitUtils.getRemoteAddress(request);
+            return ClientAddress.of(request, rateLimitUtils).getValue();
         }
     },
 
@@ -50,12 +48,12 @@ public enum RateLimitType {
     USER {
         @Override
         public boolean apply(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return matcher.equals(rateLimitUtils.getUser(request));
+            return matcher.equals(RequestIdentity.of(request, rateLimitUtils).getUser());
         }
 
         @Override
         public String key(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return rateLimitUtils.getUser(request);
+            return RequestIdentity.of(request, rateLimitUtils).getUser();
         }
     },
 
@@ -80,7 +78,7 @@ public enum RateLimitType {
     ROLE {
         @Override
         public boolean apply(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return rateLimitUtils.getUserRoles().contains(matcher.toUpperCase());
+            return RequestIdentity.of(request, rateLimitUtils).getUserRoles().contains(matcher.toUpperCase());
         }
 
         @Override
@@ -116,12 +114,12 @@ public enum RateLimitType {
     HTTP_METHOD {
         @Override
         public boolean apply(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return request.getMethod().equalsIgnoreCase(matcher);
+            return RequestIdentity.of(request, rateLimitUtils).getMethod().equalsIgnoreCase(matcher);
         }
 
         @Override
         public String key(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return StringUtils.isEmpty(matcher) ? request.getMethod() : "http-method";
+            return StringUtils.isEmpty(matcher) ? RequestIdentity.of(request, rateLimitUtils).getMethod() : "http-method";
         }
     },
 
@@ -131,7 +129,7 @@ public enum RateLimitType {
     URL_PATTERN {
         @Override
         public boolean apply(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils, String matcher) {
-            return new AntPathMatcher().match(matcher.toLowerCase(), request.getRequestURI().toLowerCase());
+            return PATH_MATCHER.match(matcher.toLowerCase(), RequestIdentity.of(request, rateLimitUtils).getLowerCaseRequestUri());
         }
 
         @Override
@@ -164,12 +162,24 @@ public enum RateLimitType {
         }
     };
 
+    /**
+     * Thread safe, caches the tokenized patterns.
+     */
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
     public abstract boolean apply(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils,
         String matcher);
 
     public abstract String key(HttpServletRequest request, Route route,
                                RateLimitUtils rateLimitUtils, String matcher);
 
+    /**
+     * @return Whether the keys of this type are the same for all the clients of a route
+     */
+    public boolean isRouteWide() {
+        return this == URL || this == URL_PATTERN || this == HTTPMETHOD || this == HTTP_METHOD;
+    }
+
     /**
      * Helper method to validate specific cases per type.
      *
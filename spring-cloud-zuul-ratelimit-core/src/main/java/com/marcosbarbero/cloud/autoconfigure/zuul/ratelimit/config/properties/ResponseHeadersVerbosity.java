@@ -32,5 +32,9 @@ public enum ResponseHeadersVerbosity {
     /**
      * Add rate limit headers to response including keys.
      */
-    VERBOSE
+    VERBOSE,
+    /**
+     * Add the standard rate limit headers of the policy closest to its limit only.
+     */
+    MOST_RESTRICTIVE
 }
@@ -22,7 +22,8 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.Ra
 import java.time.Duration;
 
 /**
- * Bucket4j rate limiter configuration.
+ * Base class for the rate limiters whose backend updates a counter atomically (Redis script, Bucket4j grid, local
+ * atomic counters). No lock is taken here, concurrent requests are serialized by the backend itself.
  *
  * @author Liel Chayoun
  * @since 2018-04-06
@@ -30,12 +31,14 @@ import java.time.Duration;
 public abstract class AbstractCacheRateLimiter implements RateLimiter {
 
     @Override
-    public synchronized Rate consume(Policy policy, String key, Long requestTime) {
+    public Rate consume(Policy policy, String key, Long requestTime) {
         final Duration refreshInterval = policy.getRefreshInterval();
         final Long quota = policy.getQuota() != null ? policy.getQuota().toMillis() : null;
         final Rate rate = new Rate(key, policy.getLimit(), quota, null, null);
 
-        calcRemainingLimit(policy.getLimit(), refreshInterval, requestTime, key, rate);
+        if (requestTime == null) {
+            calcRemainingLimit(policy.getLimit(), refreshInterval, null, key, rate);
+        }
         calcRemainingQuota(quota, refreshInterval, requestTime, key, rate);
 
         return rate;
@@ -20,9 +20,14 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import java.util.Date;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitAlgorithm.SLIDING_WINDOW;
 
 /**
- * Abstract implementation for {@link RateLimiter}.
+ * Abstract implementation for {@link RateLimiter}. The rate is read, updated and saved back, so requests sharing a key
+ * are serialized by a lock striped on the key while requests for unrelated keys proceed in parallel.
  *
  * @author Liel Chayoun
  * @author Marcos Barbero
@@ -30,6 +35,15 @@ import java.util.Date;
  */
 public abstract class AbstractRateLimiter implements RateLimiter {
 
+    private static final int LOCK_STRIPES = 64;
+    private static final Lock[] LOCKS = new Lock[LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            LOCKS[i] = new ReentrantLock();
+        }
+    }
+
     private final RateLimiterErrorHandler rateLimiterErrorHandler;
 
     protected AbstractRateLimiter(RateLimiterErrorHandler rateLimiterErrorHandler) {
@@ -40,16 +54,42 @@ public abstract class AbstractRateLimiter implements RateLimiter {
 
     protected abstract void saveRate(Rate rate);
 
+    /**
+     * Sets the remaining counts of the window preceding the one of a sliding window rate read by {@link
+     * #getRate(String)}. Nothing to do by default, the counts being stored with the rate.
+     */
+    protected void loadPreviousWindow(Rate rate) {
+    }
+
+    /**
+     * Stores the remaining counts of the window preceding the one of a new sliding window rate. Nothing to do by
+     * default, the counts being stored with the rate.
+     */
+    protected void savePreviousWindow(Rate rate) {
+    }
+
     @Override
-    public synchronized Rate consume(final Policy policy, final String key, final Long requestTime) {
-        Rate rate = this.create(policy, key);
-        updateRate(policy, rate, requestTime);
+    public Rate consume(final Policy policy, final String key, final Long requestTime) {
+        final Lock lock = lock(key);
+        lock.lock();
         try {
-            saveRate(rate);
-        } catch (RuntimeException e) {
-            rateLimiterErrorHandler.handleSaveError(key, e);
+            Rate rate = this.create(policy, key);
+            updateRate(policy, rate, requestTime);
+            if (isAccounted(policy, requestTime)) {
+                try {
+                    saveRate(rate);
+                } catch (RuntimeException e) {
+                    rateLimiterErrorHandler.handleSaveError(key, e);
+                }
+            }
+            return policy.getAlgorithm() == SLIDING_WINDOW ? slidingView(policy, rate) : rate;
+        } finally {
+            lock.unlock();
         }
-        return rate;
+    }
+
+    private Lock lock(final String key) {
+        return LOCKS[(key.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES];
     }
 
     private Rate create(final Policy policy, final String key) {
@@ -61,15 +101,63 @@ public abstract class AbstractRateLimiter implements RateLimiter {
         }
 
         if (!isExpired(rate)) {
+            if (policy.getAlgorithm() == SLIDING_WINDOW) {
+                try {
+                    loadPreviousWindow(rate);
+                } catch (RuntimeException e) {
+                    rateLimiterErrorHandler.handleFetchError(key, e);
+                }
+            }
             return rate;
         }
 
         Long limit = policy.getLimit();
         Long quota = policy.getQuota() != null ? policy.getQuota().toMillis() : null;
         long refreshInterval = policy.getRefreshInterval().toMillis();
-        Date expiration = new Date(System.currentTimeMillis() + refreshInterval);
+        long now = System.currentTimeMillis();
+
+        if (policy.getAlgorithm() != SLIDING_WINDOW) {
+            return new Rate(key, limit, quota, refreshInterval, new Date(now + refreshInterval));
+        }
+
+        long start = now - now % refreshInterval;
+        Rate current = new Rate(key, limit, quota, refreshInterval, new Date(start + refreshInterval));
+        if (rate != null && rate.getExpiration().getTime() == start) {
+            current.setPreviousRemaining(rate.getRemaining());
+            current.setPreviousRemainingQuota(rate.getRemainingQuota());
+            try {
+                savePreviousWindow(current);
+            } catch (RuntimeException e) {
+                rateLimiterErrorHandler.handleSaveError(key, e);
+            }
+        }
+        return current;
+    }
 
-        return new Rate(key, limit, quota, refreshInterval, expiration);
+    /**
+     * The stored rate only counts the current window, the returned one also deducts the usage of the previous window
+     * weighted by the part of it still covered by the sliding interval.
+     */
+    private Rate slidingView(final Policy policy, final Rate rate) {
+        final long refreshInterval = policy.getRefreshInterval().toMillis();
+        final long overlap = Math.max(0, Math.min(rate.getExpiration().getTime() - System.currentTimeMillis(),
+                refreshInterval));
+        final Long quota = policy.getQuota() != null ? policy.getQuota().toMillis() : null;
+        return new Rate(rate.getKey(),
+                slidingRemaining(rate.getRemaining(), rate.getPreviousRemaining(), policy.getLimit(), overlap,
+                        refreshInterval),
+                slidingRemaining(rate.getRemainingQuota(), rate.getPreviousRemainingQuota(), quota, overlap,
+                        refreshInterval),
+                rate.getReset(), rate.getExpiration());
+    }
+
+    private static Long slidingRemaining(final Long remaining, final Long previousRemaining, final Long maximum,
+                                         final long overlap, final long refreshInterval) {
+        if (remaining == null || previousRemaining == null || maximum == null) {
+            return remaining;
+        }
+        long previousUsage = maximum - previousRemaining;
+        return Math.max(-1, remaining - previousUsage * overlap / refreshInterval);
     }
 
     private void updateRate(final Policy policy, final Rate rate, final Long requestTime) {
@@ -85,6 +173,14 @@ public abstract class AbstractRateLimiter implements RateLimiter {
         }
     }
 
+    /**
+     * Whether the policy has something to account in this phase, otherwise the rate was only read and there is no
+     * need to write it back.
+     */
+    private boolean isAccounted(final Policy policy, final Long requestTime) {
+        return requestTime == null ? policy.getLimit() != null : policy.getQuota() != null;
+    }
+
     private boolean isExpired(final Rate rate) {
         return rate == null || (rate.getExpiration().getTime() < System.currentTimeMillis());
     }
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Redis rate limiter gathering the script calls of concurrent requests into pipelined batches. A single sender thread
+ * waits up to the batch window after the first pending call, or until the batch size is reached, and sends all the
+ * calls it collected in one round trip; each request then gets its own reply. Pipelines are not supported by Redis
+ * Cluster connections, so the calls are sent one by one there. The sender claims each call before adding it to a
+ * pipeline: a request not replied to within the batch timeout makes its own script call only if it claims its call
+ * first, meaning it was never sent, and otherwise waits for the reply in flight so that no counter is updated twice.
+ * The same goes for the calls of a batch that failed unexpectedly and for the requests made once the rate limiter is
+ * closed.
+ */
+public class BatchingRedisRateLimiter extends RedisRateLimiter implements AutoCloseable {
+
+    private final StringRedisTemplate redisTemplate;
+    private final long batchWindow;
+    private final int batchSize;
+    private final long batchTimeout;
+    private final BlockingQueue<Call> calls = new LinkedBlockingQueue<>();
+    private final Thread sender;
+    private volatile boolean closed;
+
+    public BatchingRedisRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
+                                    final StringRedisTemplate redisTemplate, final int counterShards,
+                                    final Duration batchWindow, final int batchSize, final Duration batchTimeout) {
+        super(rateLimiterErrorHandler, redisTemplate, counterShards);
+        this.redisTemplate = redisTemplate;
+        this.batchWindow = batchWindow.toNanos();
+        this.batchSize = batchSize;
+        this.batchTimeout = batchTimeout.toNanos();
+        this.sender = new Thread(this::send, "ratelimit-redis-batch");
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    @Override
+    List<List<Long>> submit(final List<List<Counter>> batches, final boolean stopOnExceeded) {
+        if (closed || isCluster()) {
+            return null;
+        }
+        final List<Call> pending = new ArrayList<>(batches.size());
+        for (List<Counter> batch : batches) {
+            final Call call = new Call(batch, args(batch, stopOnExceeded, false));
+            pending.add(call);
+            calls.add(call);
+        }
+        // the sender may have drained the queue before these calls were added, they are claimed right away then
+        final long deadline = closed ? System.nanoTime() : System.nanoTime() + batchTimeout;
+        final List<List<Long>> current = new ArrayList<>(pending.size());
+        for (Call call : pending) {
+            current.add(reply(call, deadline, stopOnExceeded));
+        }
+        return current;
+    }
+
+    /**
+     * Waits for the reply of the call until the deadline. A call not replied to by then, or rejected by the sender, is
+     * made directly if the request claims it before the sender does; a call already sent is waited for until its reply
+     * comes, the sender completing every call it sent.
+     */
+    private List<Long> reply(final Call call, final long deadline, final boolean stopOnExceeded) {
+        try {
+            return call.reply.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // the call is made on its own if it was never sent
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (call.claim(State.ABANDONED)) {
+            return execute(call.batch, stopOnExceeded, false);
+        }
+        try {
+            return call.reply.join();
+        } catch (CompletionException e) {
+            // the error handler rejected the fallback reply, as it would have for a direct script call
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        sender.interrupt();
+    }
+
+    private void send() {
+        final List<Call> batch = new ArrayList<>(batchSize);
+        while (!closed) {
+            try {
+                batch.add(calls.take());
+                final long deadline = System.nanoTime() + batchWindow;
+                while (batch.size() < batchSize) {
+                    final Call call = calls.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (call == null) {
+                        break;
+                    }
+                    batch.add(call);
+                }
+                batch.removeIf(call -> !call.claim(State.SENT));
+                if (!batch.isEmpty()) {
+                    send(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                reject(batch, e);
+                break;
+            } catch (Throwable e) {
+                abort(batch, e);
+            } finally {
+                batch.clear();
+            }
+        }
+        batch.addAll(calls);
+        reject(batch, new IllegalStateException("Rate limiter closed"));
+    }
+
+    private void send(final List<Call> batch) {
+        List<Object> replies;
+        try {
+            replies = pipeline(batch);
+        } catch (RuntimeException e) {
+            if (!isNoScript(e)) {
+                fail(batch, e);
+                return;
+            }
+            try {
+                redisTemplate.execute((RedisCallback<String>) connection ->
+                        connection.scriptLoad(bytes(getRedisScript().getScriptAsString())));
+                replies = pipeline(batch);
+            } catch (RuntimeException retry) {
+                fail(batch, retry);
+                return;
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            complete(batch.get(i), i < replies.size() ? replies.get(i) : null, null);
+        }
+    }
+
+    private List<Object> pipeline(final List<Call> batch) {
+        final String sha = getRedisScript().getSha1();
+        return redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Call call : batch) {
+                evalSha(connection, sha, call);
+            }
+            return null;
+        });
+    }
+
+    private static void evalSha(final RedisConnection connection, final String sha, final Call call) {
+        final byte[][] keysAndArgs = new byte[call.keys.size() + call.args.length][];
+        for (int i = 0; i < call.keys.size(); i++) {
+            keysAndArgs[i] = bytes(call.keys.get(i));
+        }
+        for (int i = 0; i < call.args.length; i++) {
+            keysAndArgs[call.keys.size() + i] = bytes(call.args[i]);
+        }
+        connection.evalSha(sha, ReturnType.MULTI, call.keys.size(), keysAndArgs);
+    }
+
+    private void fail(final List<Call> batch, final RuntimeException e) {
+        for (Call call : batch) {
+            complete(call, null, e);
+        }
+    }
+
+    /**
+     * Completes the call with its script reply, or with the fallback reply when the reply is missing or unexpected.
+     * The call is completed exceptionally only when the error handler rejects the fallback reply.
+     */
+    private void complete(final Call call, final Object reply, final Throwable error) {
+        Throwable cause = error;
+        if (reply instanceof List) {
+            try {
+                call.reply.complete(values((List<?>) reply));
+                return;
+            } catch (RuntimeException e) {
+                cause = e;
+            }
+        }
+        try {
+            call.reply.complete(fallback(call.batch, call.keys, cause));
+        } catch (Throwable e) {
+            call.reply.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Completes the calls of a batch that failed unexpectedly: the calls already sent get the fallback reply, as they
+     * may have updated their counters, the others are rejected so that their requests make their script calls directly.
+     */
+    private void abort(final List<Call> batch, final Throwable e) {
+        for (Call call : batch) {
+            if (call.state.get() == State.SENT) {
+                complete(call, null, e);
+            } else {
+                call.reply.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Rejects calls the sender never claimed, so that their requests make their script calls directly.
+     */
+    private static void reject(final List<Call> batch, final Throwable e) {
+        for (Call call : batch) {
+            call.reply.completeExceptionally(e);
+        }
+    }
+
+    private static boolean isNoScript(final Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Long> values(final List<?> reply) {
+        final List<Long> values = new ArrayList<>(reply.size());
+        for (Object value : reply) {
+            values.add(((Number) value).longValue());
+        }
+        return values;
+    }
+
+    private static byte[] bytes(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private enum State {
+        PENDING, SENT, ABANDONED
+    }
+
+    private static final class Call {
+
+        private final List<Counter> batch;
+        private final List<String> keys;
+        private final String[] args;
+        private final AtomicReference<State> state = new AtomicReference<>(State.PENDING);
+        private final CompletableFuture<List<Long>> reply = new CompletableFuture<>();
+
+        private Call(List<Counter> batch, String[] args) {
+            this.batch = batch;
+            this.keys = keys(batch);
+            this.args = args;
+        }
+
+        /**
+         * Claims the call for the sender or for its own request, only one of them can.
+         */
+        private boolean claim(State owner) {
+            return state.compareAndSet(State.PENDING, owner);
+        }
+    }
+}
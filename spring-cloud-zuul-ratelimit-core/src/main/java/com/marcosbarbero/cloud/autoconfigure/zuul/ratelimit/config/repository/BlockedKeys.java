@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keys over their limit or quota on this gateway node, kept until their counter resets. It holds the rate limit keys
+ * rejected by the {@link BlockedKeysRateLimiter} of the pre and post filters, with the rate they were rejected with,
+ * and the requests rejected for the early reject filter, identified by their method, client address and path. When it
+ * is full the expired keys are evicted first, and all of them when none expired.
+ */
+public final class BlockedKeys {
+
+    public static final int DEFAULT_MAX_SIZE = 100_000;
+
+    private final Map<String, Blocked> blocked = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    public BlockedKeys() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public BlockedKeys(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Key of a request for the early reject filter, only the policies whose key depends on nothing else than these
+     * may block it. It starts with a space, which the rate limit keys never do.
+     */
+    public static String requestKey(final String method, final String address, final String path) {
+        return ' ' + method + ' ' + address + ' ' + path;
+    }
+
+    /**
+     * @return The rate the key was rejected with and the time left before it resets, {@code null} when it is not blocked
+     */
+    public Rate get(final String key) {
+        final Blocked entry = entry(key);
+        return entry != null ? new Rate(key, entry.remaining, entry.remainingQuota, entry.left(), null) : null;
+    }
+
+    /**
+     * @return The time left before the key may be let through again in milliseconds, 0 when it is not blocked
+     */
+    public long remaining(final String key) {
+        final Blocked entry = entry(key);
+        return entry != null ? entry.left() : 0L;
+    }
+
+    /**
+     * Blocks the key until the reset of the rate it was rejected with.
+     */
+    public void block(final String key, final Rate rate) {
+        final Long reset = rate.getReset();
+        if (reset != null) {
+            put(key, reset, rate.getRemaining(), rate.getRemainingQuota());
+        }
+    }
+
+    /**
+     * @param key   The key
+     * @param reset The time left before the counter of the exceeded policy resets, in milliseconds
+     */
+    public void block(final String key, final long reset) {
+        put(key, reset, null, null);
+    }
+
+    int size() {
+        return blocked.size();
+    }
+
+    private Blocked entry(final String key) {
+        final Blocked entry = blocked.get(key);
+        if (entry != null && entry.left() <= 0) {
+            blocked.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    private void put(final String key, final long reset, final Long remaining, final Long remainingQuota) {
+        if (reset <= 0) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        if (blocked.size() >= maxSize) {
+            blocked.values().removeIf(entry -> entry.until <= now);
+            if (blocked.size() >= maxSize) {
+                blocked.clear();
+            }
+        }
+        blocked.put(key, new Blocked(now + reset, remaining, remainingQuota));
+    }
+
+    private static final class Blocked {
+
+        private final long until;
+        private final Long remaining;
+        private final Long remainingQuota;
+
+        private Blocked(long until, Long remaining, Long remainingQuota) {
+            this.until = until;
+            this.remaining = remaining;
+            this.remainingQuota = remainingQuota;
+        }
+
+        private long left() {
+            return until - System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rate limiter answering for the keys already over their limit or quota from the local {@link BlockedKeys}, without
+ * calling the backend until their counter resets. The other keys are consumed by the delegate, and the ones it finds
+ * exceeded are remembered with the reset of their rate. The blocked keys are not counted meanwhile, so a sliding
+ * window forgets the rejected requests.
+ */
+public class BlockedKeysRateLimiter implements RateLimiter {
+
+    private final RateLimiter delegate;
+    private final BlockedKeys blockedKeys;
+
+    public BlockedKeysRateLimiter(final RateLimiter delegate, final BlockedKeys blockedKeys) {
+        this.delegate = delegate;
+        this.blockedKeys = blockedKeys;
+    }
+
+    @Override
+    public Rate consume(final Policy policy, final String key, final Long requestTime) {
+        final Rate blocked = blockedKeys.get(key);
+        if (blocked != null) {
+            return blocked;
+        }
+        final Rate rate = delegate.consume(policy, key, requestTime);
+        block(policy, key, rate);
+        return rate;
+    }
+
+    @Override
+    public List<Rate> consume(final List<Policy> policies, final List<String> keys, final Long requestTime) {
+        final List<Rate> rates = new ArrayList<>(policies.size());
+        final List<Policy> pendingPolicies = new ArrayList<>(policies.size());
+        final List<String> pendingKeys = new ArrayList<>(policies.size());
+        for (int i = 0; i < policies.size(); i++) {
+            final Rate blocked = blockedKeys.get(keys.get(i));
+            if (blocked == null) {
+                pendingPolicies.add(policies.get(i));
+                pendingKeys.add(keys.get(i));
+                rates.add(null);
+            } else if (requestTime == null) {
+                // the policies after an exceeded one are not consumed
+                return merge(pendingPolicies, pendingKeys, null, rates, blocked);
+            } else {
+                rates.add(blocked);
+            }
+        }
+        return merge(pendingPolicies, pendingKeys, requestTime, rates, null);
+    }
+
+    /**
+     * Consumes the pending policies in one call to the delegate and puts their rates in place of the {@code null}
+     * slots, followed by the blocked rate when all of them were consumed.
+     */
+    private List<Rate> merge(List<Policy> policies, List<String> keys, Long requestTime, List<Rate> rates,
+                             Rate blocked) {
+        final List<Rate> consumed = policies.isEmpty() ? new ArrayList<>() : delegate.consume(policies, keys, requestTime);
+        int next = 0;
+        for (int i = 0; i < rates.size(); i++) {
+            if (rates.get(i) == null) {
+                if (next == consumed.size()) {
+                    return rates.subList(0, i);
+                }
+                final Rate rate = consumed.get(next);
+                block(policies.get(next), keys.get(next), rate);
+                rates.set(i, rate);
+                next++;
+            }
+        }
+        if (blocked != null) {
+            rates.add(blocked);
+        }
+        return rates;
+    }
+
+    private void block(Policy policy, String key, Rate rate) {
+        if ((policy.getLimit() != null && rate.getRemaining() < 0)
+                || (policy.getQuota() != null && rate.getRemainingQuota() < 0)) {
+            blockedKeys.block(key, rate);
+        }
+    }
+}
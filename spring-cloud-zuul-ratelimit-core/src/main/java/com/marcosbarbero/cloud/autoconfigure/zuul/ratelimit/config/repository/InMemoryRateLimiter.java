@@ -0,0 +1,163 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitAlgorithm.SLIDING_WINDOW;
+
+/**
+ * In memory rate limiter configuration. Keeps a window counter per key in the local JVM, so the limits are enforced
+ * per gateway node and not shared across a cluster. Sliding window policies also keep the count of the previous
+ * window to weight it into the current one. Once the maximum size is reached and no window has expired, the windows
+ * of new keys are not kept until some expire: live counters are never dropped, so flooding new keys cannot reset the
+ * counter of a key over its limit.
+ */
+public class InMemoryRateLimiter implements RateLimiter {
+
+    private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final int maxSize;
+    private volatile long nextSweep;
+
+    public InMemoryRateLimiter(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public Rate consume(final Policy policy, final String key, final Long requestTime) {
+        final Long limit = policy.getLimit();
+        final Long quota = policy.getQuota() != null ? policy.getQuota().toMillis() : null;
+        final Rate rate = new Rate(key, limit, quota, null, null);
+
+        if (limit != null && requestTime == null) {
+            long current = increment(key, 1L, policy, rate);
+            rate.setRemaining(Math.max(-1, limit - current));
+        }
+        if (quota != null) {
+            long usage = requestTime != null ? requestTime : 0L;
+            long current = increment(key + QUOTA_SUFFIX, usage, policy, rate);
+            rate.setRemainingQuota(Math.max(-1, quota - current));
+        }
+        return rate;
+    }
+
+    int size() {
+        return windows.size();
+    }
+
+    private long increment(String key, long usage, Policy policy, Rate rate) {
+        final long now = System.currentTimeMillis();
+        final long interval = policy.getRefreshInterval().toMillis();
+        final boolean sliding = policy.getAlgorithm() == SLIDING_WINDOW;
+        Window window = windows.get(key);
+        long current;
+        while (true) {
+            if (window == null || window.isOver(now)) {
+                long start = sliding ? now - now % interval : now;
+                long previous = sliding && window != null && window.expiration == start ? window.counter.get() : 0L;
+                Window fresh = new Window(start + interval, sliding ? interval : 0L, usage, previous);
+                if (window == null && isFull()) {
+                    window = fresh;
+                    current = usage;
+                    break;
+                }
+                boolean stored = window == null ? windows.putIfAbsent(key, fresh) == null
+                        : windows.replace(key, window, fresh);
+                if (stored) {
+                    window = fresh;
+                    current = usage;
+                    break;
+                }
+                window = windows.get(key);
+            } else {
+                current = window.counter.addAndGet(usage);
+                break;
+            }
+        }
+        final long left = window.expiration - now;
+        rate.setReset(left);
+        return current + window.previous * left / interval;
+    }
+
+    private boolean isFull() {
+        if (windows.size() < maxSize) {
+            return false;
+        }
+        evict();
+        return windows.size() >= maxSize;
+    }
+
+    /**
+     * Drops the expired windows, no sooner than the first of the remaining ones expires so that new keys on a full map
+     * do not scan it on every request. Only one thread sweeps at a time, the others carry on without waiting.
+     */
+    private void evict() {
+        final long now = System.currentTimeMillis();
+        if (now < nextSweep || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long next = Long.MAX_VALUE;
+            for (Iterator<Window> iterator = windows.values().iterator(); iterator.hasNext(); ) {
+                final Window window = iterator.next();
+                if (window.isExpired(now)) {
+                    iterator.remove();
+                } else {
+                    next = Math.min(next, window.expiration + window.retention);
+                }
+            }
+            nextSweep = next;
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static final class Window {
+
+        private final long expiration;
+        private final long retention;
+        private final AtomicLong counter;
+        private final long previous;
+
+        private Window(long expiration, long retention, long initial, long previous) {
+            this.expiration = expiration;
+            this.retention = retention;
+            this.counter = new AtomicLong(initial);
+            this.previous = previous;
+        }
+
+        private boolean isOver(long now) {
+            return expiration <= now;
+        }
+
+        /**
+         * A sliding window is still needed as the previous one during the interval after it is over.
+         */
+        private boolean isExpired(long now) {
+            return expiration + retention <= now;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Redis rate limiter sending its script calls through the non blocking Lettuce driver. All the script calls of a
+ * request are sent at once and awaited together, for at most the async timeout, and the calls of concurrent requests
+ * are written to the shared connection without waiting for each other's replies. The calls not replied to in time, or
+ * failing, get the same fallback reply as the blocking script calls.
+ */
+public class ReactiveRedisRateLimiter extends RedisRateLimiter {
+
+    private final ReactiveStringRedisTemplate reactiveRedisTemplate;
+    private final Duration timeout;
+
+    public ReactiveRedisRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
+                                    final StringRedisTemplate redisTemplate,
+                                    final ReactiveStringRedisTemplate reactiveRedisTemplate, final int counterShards,
+                                    final Duration timeout) {
+        super(rateLimiterErrorHandler, redisTemplate, counterShards);
+        this.reactiveRedisTemplate = reactiveRedisTemplate;
+        this.timeout = timeout;
+    }
+
+    @Override
+    List<List<Long>> submit(final List<List<Counter>> batches, final boolean stopOnExceeded) {
+        final List<Mono<List<Long>>> calls = new ArrayList<>(batches.size());
+        for (List<Counter> batch : batches) {
+            calls.add(call(batch, stopOnExceeded));
+        }
+        try {
+            return Flux.mergeSequential(calls).collectList().block(timeout);
+        } catch (RuntimeException e) {
+            final List<List<Long>> current = new ArrayList<>(batches.size());
+            for (List<Counter> batch : batches) {
+                current.add(fallback(batch, keys(batch), e));
+            }
+            return current;
+        }
+    }
+
+    private Mono<List<Long>> call(final List<Counter> batch, final boolean stopOnExceeded) {
+        final List<String> keys = keys(batch);
+        final List<String> args = Arrays.asList(args(batch, stopOnExceeded, false));
+        return reactiveRedisTemplate.execute(getRedisScript(), keys, args)
+                .cast(Object.class)
+                .flatMapIterable(ReactiveRedisRateLimiter::elements)
+                .map(value -> ((Number) value).longValue())
+                .collectList()
+                .map(current -> current.isEmpty() ? fallback(batch, keys, null) : current)
+                .onErrorResume(e -> Mono.just(fallback(batch, keys, e)));
+    }
+
+    /**
+     * Depending on the driver, the reply of the script is emitted as a single list or element by element.
+     */
+    private static Iterable<?> elements(final Object reply) {
+        return reply instanceof Collection ? (Collection<?>) reply : Collections.singletonList(reply);
+    }
+}
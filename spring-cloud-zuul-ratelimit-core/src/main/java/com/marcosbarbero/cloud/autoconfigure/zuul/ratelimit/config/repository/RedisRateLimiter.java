@@ -17,73 +17,340 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
 
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitAlgorithm;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy.MatchType;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.data.redis.core.script.RedisScript;
 
-import java.time.Duration;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Objects;
-
-import static java.util.concurrent.TimeUnit.SECONDS;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
+ * Redis {@link RateLimiter} configuration. All the limit and quota counters of a request are checked and consumed by
+ * a single script call, which also returns the time left on each counter for the reset value of the {@link Rate}.
+ * Policies using the {@link RateLimitAlgorithm#GCRA} keep a single theoretical arrival time per key instead of a
+ * counter, the {@link RateLimitAlgorithm#SLIDING_WINDOW} ones a hash with the current and previous window counts.
+ * The counters of route wide policies can be split into several sub-counters, each enforcing its share of the limit;
+ * the remainder of the limit is spread over the first sub-counters so that they add up to the whole limit.
+ * On Redis Cluster the counters are split into one call per run of keys sharing a hash slot.
+ *
  * @author Marcos Barbero
  * @author Liel Chayoun
  */
-public class RedisRateLimiter extends AbstractCacheRateLimiter {
+public class RedisRateLimiter implements RateLimiter {
 
     private final RateLimiterErrorHandler rateLimiterErrorHandler;
     private final StringRedisTemplate redisTemplate;
-    private final RedisScript<Long> redisScript;
+    private final int counterShards;
+    @SuppressWarnings("rawtypes")
+    private final RedisScript<List> redisScript;
+    private volatile Boolean cluster;
 
     public RedisRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
                             final StringRedisTemplate redisTemplate) {
+        this(rateLimiterErrorHandler, redisTemplate, 1);
+    }
+
+    public RedisRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
+                            final StringRedisTemplate redisTemplate, final int counterShards) {
         this.rateLimiterErrorHandler = rateLimiterErrorHandler;
         this.redisTemplate = redisTemplate;
+        this.counterShards = counterShards;
         this.redisScript = getScript();
     }
 
     @Override
-    protected void calcRemainingLimit(final Long limit, final Duration refreshInterval,
-                                      final Long requestTime, final String key, final Rate rate) {
-        if (Objects.nonNull(limit)) {
-            long usage = requestTime == null ? 1L : 0L;
-            Long remaining = calcRemaining(limit, refreshInterval, usage, key, rate);
-            rate.setRemaining(remaining);
-        }
+    public Rate consume(final Policy policy, final String key, final Long requestTime) {
+        return consume(Collections.singletonList(policy), Collections.singletonList(key), requestTime).get(0);
     }
 
     @Override
-    protected void calcRemainingQuota(final Long quota, final Duration refreshInterval,
-                                      final Long requestTime, final String key, final Rate rate) {
-        if (Objects.nonNull(quota)) {
-            String quotaKey = key + QUOTA_SUFFIX;
-            long usage = requestTime != null ? requestTime : 0L;
-            Long remaining = calcRemaining(quota, refreshInterval, usage, quotaKey, rate);
-            rate.setRemainingQuota(remaining);
+    public List<Rate> consume(final List<Policy> policies, final List<String> keys, final Long requestTime) {
+        final boolean stopOnExceeded = requestTime == null;
+        final List<Counter> counters = counters(policies, keys, requestTime);
+        final long[] values = new long[counters.size()];
+        final long[] ttls = new long[counters.size()];
+        int evaluated = 0;
+        boolean exceeded = false;
+        boolean stopped = false;
+
+        final List<List<Counter>> batches = batches(counters);
+        final List<List<Long>> submitted = submit(batches, stopOnExceeded);
+        for (int b = 0; b < batches.size(); b++) {
+            final List<Counter> batch = batches.get(b);
+            final List<Long> current = submitted != null ? submitted.get(b) : execute(batch, stopOnExceeded, exceeded);
+            for (int i = 0; i < batch.size() && !stopped; i++) {
+                final Counter counter = batch.get(i);
+                if (i * 2 + 1 >= current.size()) {
+                    stopped = true;
+                    break;
+                }
+                values[evaluated] = current.get(i * 2);
+                ttls[evaluated] = current.get(i * 2 + 1);
+                exceeded = exceeded || values[evaluated] > counter.maximum;
+                evaluated++;
+                if (counter.last) {
+                    stopped = stopOnExceeded && exceeded;
+                    exceeded = false;
+                }
+            }
+            if (stopped) {
+                break;
+            }
+        }
+
+        final int consumed = stopped ? counters.get(evaluated - 1).policy + 1 : policies.size();
+        return rates(policies.subList(0, consumed), keys, counters, values, ttls);
+    }
+
+    private List<Counter> counters(final List<Policy> policies, final List<String> keys, final Long requestTime) {
+        final List<Counter> counters = new ArrayList<>(policies.size() * 2);
+        for (int i = 0; i < policies.size(); i++) {
+            final Policy policy = policies.get(i);
+            final String algorithm = algorithm(policy.getAlgorithm());
+            final long window = policy.getRefreshInterval().toMillis();
+            final int shards = shards(policy);
+            final int shard = shards > 1 ? ThreadLocalRandom.current().nextInt(shards) : 0;
+            final String key = shards > 1 ? shardKey(keys.get(i), shard) : keys.get(i);
+            if (policy.getLimit() != null && requestTime == null) {
+                counters.add(new Counter(i, key, false, algorithm, 1L, window, policy.getLimit(),
+                        share(policy.getLimit(), shards, shard), policy.getQuota() == null));
+            }
+            if (policy.getQuota() != null) {
+                long usage = requestTime != null ? requestTime : 0L;
+                final long quota = policy.getQuota().toMillis();
+                counters.add(new Counter(i, key + QUOTA_SUFFIX, true, algorithm, usage, window, quota,
+                        share(quota, shards, shard), true));
+            }
+        }
+        return counters;
+    }
+
+    /**
+     * Number of sub-counters the policy counters are split into: only route wide policies are sharded, and never into
+     * more sub-counters than their limit or quota so that each one keeps a share of at least one.
+     */
+    private int shards(final Policy policy) {
+        if (counterShards <= 1) {
+            return 1;
+        }
+        for (MatchType matchType : policy.getType()) {
+            if (!matchType.getType().isRouteWide()) {
+                return 1;
+            }
+        }
+        long shards = counterShards;
+        if (policy.getLimit() != null) {
+            shards = Math.min(shards, policy.getLimit());
+        }
+        if (policy.getQuota() != null) {
+            shards = Math.min(shards, policy.getQuota().toMillis());
+        }
+        return (int) Math.max(1, shards);
+    }
+
+    /**
+     * Share of the total enforced by a sub-counter, the first {@code total % shards} sub-counters get one more so that
+     * the shares add up to the total.
+     */
+    static long share(final long total, final int shards, final int shard) {
+        return total / shards + (shard < total % shards ? 1 : 0);
+    }
+
+    /**
+     * Appends the shard to the key, inside its hash tag when it has one so the sub-counters are spread over the slots.
+     */
+    static String shardKey(final String key, final int shard) {
+        final int open = key.indexOf('{');
+        final int close = open < 0 ? -1 : key.indexOf('}', open + 1);
+        if (close > open + 1) {
+            return key.substring(0, close) + ":" + shard + key.substring(close);
+        }
+        return key + ":" + shard;
+    }
+
+    private static String algorithm(final RateLimitAlgorithm algorithm) {
+        switch (algorithm) {
+            case GCRA:
+                return "gcra";
+            case SLIDING_WINDOW:
+                return "sliding";
+            default:
+                return "fixed";
+        }
+    }
+
+    private List<Rate> rates(final List<Policy> policies, final List<String> keys, final List<Counter> counters,
+                             final long[] values, final long[] ttls) {
+        final List<Rate> rates = new ArrayList<>(policies.size());
+        for (int i = 0; i < policies.size(); i++) {
+            final Policy policy = policies.get(i);
+            final Long quota = policy.getQuota() != null ? policy.getQuota().toMillis() : null;
+            rates.add(new Rate(keys.get(i), policy.getLimit(), quota, policy.getRefreshInterval().toMillis(), null));
+        }
+        for (int i = 0; i < counters.size() && counters.get(i).policy < rates.size(); i++) {
+            final Counter counter = counters.get(i);
+            final Rate rate = rates.get(counter.policy);
+            final long left = counter.maximum - values[i];
+            final long remaining = left < 0 ? -1 : left * counter.total / counter.maximum;
+            final long reset = ttls[i] >= 0 ? ttls[i] : policies.get(counter.policy).getRefreshInterval().toMillis();
+            final boolean first = i == 0 || counters.get(i - 1).policy != counter.policy;
+            rate.setReset(first ? reset : Math.max(rate.getReset(), reset));
+            if (counter.quota) {
+                rate.setRemainingQuota(remaining);
+            } else {
+                rate.setRemaining(remaining);
+            }
         }
+        return rates;
     }
 
-    private Long calcRemaining(Long limit, Duration refreshInterval, long usage, String key, Rate rate) {
-        rate.setReset(refreshInterval.toMillis());
-        Long current = 0L;
+    /**
+     * Groups the counters into the script calls to be made: all of them at once, or on Redis Cluster each run of
+     * consecutive counters stored in the same hash slot.
+     */
+    private List<List<Counter>> batches(final List<Counter> counters) {
+        if (counters.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (!isCluster()) {
+            return Collections.singletonList(counters);
+        }
+        final List<List<Counter>> batches = new ArrayList<>();
+        List<Counter> batch = new ArrayList<>();
+        int slot = -1;
+        for (Counter counter : counters) {
+            final int counterSlot = ClusterSlotHashUtil.calculateSlot(counter.key);
+            if (counterSlot != slot && !batch.isEmpty()) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+            slot = counterSlot;
+            batch.add(counter);
+        }
+        batches.add(batch);
+        return batches;
+    }
+
+    /**
+     * Sends the script calls of all the batches at once and returns their results, or {@code null} to have them
+     * executed one after the other, each one as soon as the previous one returned. Sending them at once gives up on
+     * skipping the batches after a policy exceeded in an earlier one.
+     */
+    List<List<Long>> submit(final List<List<Counter>> batches, final boolean stopOnExceeded) {
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Long> execute(final List<Counter> batch, final boolean stopOnExceeded, final boolean exceeded) {
+        final List<String> keys = keys(batch);
+        List<Long> current = null;
         try {
-            current = redisTemplate.execute(redisScript, Collections.singletonList(key), Long.toString(usage),
-                    Long.toString(refreshInterval.getSeconds()));
+            current = redisTemplate.execute(redisScript, keys, (Object[]) args(batch, stopOnExceeded, exceeded));
         } catch (RuntimeException e) {
-            String msg = "Failed retrieving rate for " + key + ", will return the current value";
-            rateLimiterErrorHandler.handleError(msg, e);
+            return fallback(batch, keys, e);
+        }
+        return current != null ? current : fallback(batch, keys, null);
+    }
+
+    static List<String> keys(final List<Counter> batch) {
+        final List<String> keys = new ArrayList<>(batch.size());
+        for (Counter counter : batch) {
+            keys.add(counter.key);
+        }
+        return keys;
+    }
+
+    static String[] args(final List<Counter> batch, final boolean stopOnExceeded, final boolean exceeded) {
+        final String[] args = new String[2 + batch.size() * 5];
+        args[0] = stopOnExceeded ? "1" : "0";
+        args[1] = exceeded ? "1" : "0";
+        for (int i = 0; i < batch.size(); i++) {
+            final Counter counter = batch.get(i);
+            args[2 + i * 5] = counter.algorithm;
+            args[3 + i * 5] = Long.toString(counter.usage);
+            args[4 + i * 5] = Long.toString(counter.window);
+            args[5 + i * 5] = Long.toString(counter.maximum);
+            args[6 + i * 5] = counter.last ? "1" : "0";
+        }
+        return args;
+    }
+
+    /**
+     * Reports the failure, if any, and leaves the counters of the batch untouched.
+     */
+    List<Long> fallback(final List<Counter> batch, final List<String> keys, final Throwable e) {
+        if (e != null) {
+            String msg = "Failed retrieving rate for " + String.join(", ", keys) + ", will return the current value";
+            rateLimiterErrorHandler.handleError(msg, e instanceof Exception ? (Exception) e : new RuntimeException(e));
+        }
+        final List<Long> current = new ArrayList<>(batch.size() * 2);
+        for (int i = 0; i < batch.size(); i++) {
+            current.add(0L);
+            current.add(-1L);
+        }
+        return current;
+    }
+
+    @SuppressWarnings("rawtypes")
+    RedisScript<List> getRedisScript() {
+        return redisScript;
+    }
+
+    boolean isCluster() {
+        Boolean isCluster = this.cluster;
+        if (isCluster == null) {
+            try {
+                isCluster = Boolean.TRUE.equals(redisTemplate.execute(
+                        (RedisCallback<Boolean>) connection -> connection instanceof RedisClusterConnection));
+                this.cluster = isCluster;
+            } catch (RuntimeException e) {
+                return false;
+            }
         }
-        return Math.max(-1, limit - (current != null ? current.intValue() : 0));
+        return isCluster;
     }
 
-    private RedisScript<Long> getScript() {
-        DefaultRedisScript<Long> redisScript = new DefaultRedisScript<>();
+    @SuppressWarnings("rawtypes")
+    private RedisScript<List> getScript() {
+        DefaultRedisScript<List> redisScript = new DefaultRedisScript<>();
         redisScript.setLocation(new ClassPathResource("/scripts/ratelimit.lua"));
-        redisScript.setResultType(Long.class);
+        redisScript.setResultType(List.class);
         return redisScript;
     }
+
+    static final class Counter {
+
+        private final int policy;
+        private final String key;
+        private final boolean quota;
+        private final String algorithm;
+        private final long usage;
+        private final long window;
+        private final long total;
+        private final long maximum;
+        private final boolean last;
+
+        private Counter(int policy, String key, boolean quota, String algorithm, long usage, long window, long total,
+                        long maximum, boolean last) {
+            this.policy = policy;
+            this.key = key;
+            this.quota = quota;
+            this.algorithm = algorithm;
+            this.usage = usage;
+            this.window = window;
+            this.total = total;
+            this.maximum = maximum;
+            this.last = last;
+        }
+    }
 }
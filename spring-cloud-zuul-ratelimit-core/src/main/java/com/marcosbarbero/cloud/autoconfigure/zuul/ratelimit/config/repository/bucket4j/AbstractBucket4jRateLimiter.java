@@ -102,11 +102,7 @@ abstract class AbstractBucket4jRateLimiter<T extends AbstractBucketBuilder<T>, E
             return;
         }
         Bucket bucket = getLimitBucket(key, limit, refreshInterval);
-        if (requestTime == null) {
-            calcAndSetRemainingBucket(1L, rate, bucket, false);
-        } else {
-            calcAndSetRemainingBucket(bucket, rate, false);
-        }
+        calcAndSetRemainingBucket(1L, rate, bucket, false);
     }
 
     @Override
@@ -22,7 +22,8 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.Ab
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RateLimiterErrorHandler;
 
 /**
- * JPA {@link RateLimiter} configuration.
+ * JPA {@link RateLimiter} configuration. The remaining counts of the previous window of the sliding window policies are
+ * kept in a separate rate, so that the fixed window policies only ever read and write one row per key.
  *
  * @author Marcos Barbero
  * @author Liel Chayoun
@@ -30,6 +31,8 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.Ra
  */
 public class JpaRateLimiter extends AbstractRateLimiter {
 
+    static final String PREVIOUS_WINDOW_SUFFIX = "-previous";
+
     private final RateLimiterRepository repository;
 
     public JpaRateLimiter(final RateLimiterErrorHandler rateLimiterErrorHandler,
@@ -48,4 +51,20 @@ public class JpaRateLimiter extends AbstractRateLimiter {
         this.repository.save(rate);
     }
 
+    @Override
+    protected void loadPreviousWindow(Rate rate) {
+        this.repository.findById(rate.getKey() + PREVIOUS_WINDOW_SUFFIX)
+                .filter(previous -> previous.getExpiration().getTime() == rate.getExpiration().getTime())
+                .ifPresent(previous -> {
+                    rate.setPreviousRemaining(previous.getRemaining());
+                    rate.setPreviousRemainingQuota(previous.getRemainingQuota());
+                });
+    }
+
+    @Override
+    protected void savePreviousWindow(Rate rate) {
+        this.repository.save(new Rate(rate.getKey() + PREVIOUS_WINDOW_SUFFIX, rate.getPreviousRemaining(),
+                rate.getPreviousRemainingQuota(), rate.getReset(), rate.getExpiration()));
+    }
+
 }
@@ -16,24 +16,29 @@
 
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
-import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
-import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy.MatchType;
-import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitType;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RejectionMode;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DenyListFile;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitExceededException;
 import com.netflix.zuul.ZuulFilter;
 import com.netflix.zuul.context.RequestContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.cloud.netflix.zuul.RoutesRefreshedEvent;
 import org.springframework.cloud.netflix.zuul.filters.Route;
 import org.springframework.cloud.netflix.zuul.filters.RouteLocator;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.util.UrlPathHelper;
 
 import javax.servlet.http.HttpServletRequest;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.io.IOException;
 
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.*;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.CURRENT_REQUEST_STATE;
 
 
 /**
@@ -42,92 +47,134 @@ import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateL
  */
 abstract class AbstractRateLimitFilter extends ZuulFilter {
 
+    private static final Logger log = LoggerFactory.getLogger(AbstractRateLimitFilter.class);
+    // about 8MB of chars at most for the cached paths and routes
+    private static final long MAX_CACHED_ROUTES_WEIGHT = 4_000_000L;
+    // the route holds its path and full path besides the request path, all of them at most as long as it
+    private static final int CACHED_ROUTE_STRINGS = 3;
+    private static final int CACHED_ROUTE_OVERHEAD = 64;
+    // same key as the protected SendForwardFilter.SEND_FORWARD_FILTER_RAN
+    private static final String SEND_FORWARD_FILTER_RAN = "sendForwardFilter.ran";
+
     protected final RateLimitProperties properties;
     protected final RateLimitUtils rateLimitUtils;
 
     private final RouteLocator routeLocator;
     private final UrlPathHelper urlPathHelper;
+    private final DenyListFile denyListFile;
+    private final Cache<String, Route> routes = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_CACHED_ROUTES_WEIGHT)
+            .weigher((String path, Route route) -> CACHED_ROUTE_OVERHEAD + CACHED_ROUTE_STRINGS * path.length())
+            .build();
+    private volatile ConfigSnapshot config;
 
     AbstractRateLimitFilter(final RateLimitProperties properties, final RouteLocator routeLocator,
-                            final UrlPathHelper urlPathHelper, final RateLimitUtils rateLimitUtils) {
+                            final UrlPathHelper urlPathHelper, final RateLimitUtils rateLimitUtils,
+                            final DenyListFile denyListFile) {
         this.properties = properties;
         this.routeLocator = routeLocator;
         this.urlPathHelper = urlPathHelper;
         this.rateLimitUtils = rateLimitUtils;
+        this.denyListFile = denyListFile;
     }
 
     @Override
     public boolean shouldFilter() {
         RequestContext ctx = RequestContext.getCurrentContext();
         HttpServletRequest request = ctx.getRequest();
+        ConfigSnapshot config = config();
 
-        if (!properties.isEnabled()) {
+        if (!config.isEnabled()) {
             return false;
         }
 
-        if (originIsOnDenyRequest(request)) {
-            int responseStatusCode = properties.getDenyRequest().getResponseStatusCode();
-            ctx.setResponseStatusCode(responseStatusCode);
+        if (config.denies(request, rateLimitUtils, denyListFile)) {
+            HttpStatus responseStatus = config.getDenyResponseStatus();
+            ctx.setResponseStatusCode(responseStatus.value());
             ctx.setSendZuulResponse(false);
 
-            throw new RateLimitExceededException(HttpStatus.valueOf(responseStatusCode));
+            reject(ctx, responseStatus);
+            return false;
         }
 
-        return !policy(route(request), request).isEmpty();
+        return !state(request).getPolicies().isEmpty();
     }
 
-    Route route(HttpServletRequest request) {
-        Route route = (Route) RequestContext.getCurrentContext().get(CURRENT_REQUEST_ROUTE);
-        if (route != null) {
-            return route;
+    /**
+     * Rejects the request of the context, which must not be sent to the route anymore, in the configured mode.
+     *
+     * @throws RateLimitExceededException In the {@link RejectionMode#EXCEPTION} mode
+     */
+    void reject(RequestContext ctx, HttpStatus status) {
+        if (config().getRejectionMode() != RejectionMode.RESPONSE) {
+            throw new RateLimitExceededException(status);
+        }
+        // a forward route would still run, as it does not check whether the zuul response should be sent
+        ctx.set(SEND_FORWARD_FILTER_RAN, true);
+        try {
+            RejectionResponse.write(ctx.getResponse(), status);
+        } catch (IOException e) {
+            log.debug("Failed to write the rate limit rejection response", e);
         }
-
-        String requestURI = urlPathHelper.getPathWithinApplication(request);
-        route = routeLocator.getMatchingRoute(requestURI);
-
-        addObjectToCurrentRequestContext(CURRENT_REQUEST_ROUTE, route);
-
-        return route;
     }
 
-    @SuppressWarnings("unchecked")
-    protected List<Policy> policy(Route route, HttpServletRequest request) {
-        List<Policy> policies = (List<Policy>) RequestContext.getCurrentContext().get(CURRENT_REQUEST_POLICY);
-        if (policies != null) {
-            return policies;
+    /**
+     * Resolves the route and the policies of the request once, the state is shared by the pre and post filters.
+     */
+    RateLimitState state(HttpServletRequest request) {
+        final RequestContext ctx = RequestContext.getCurrentContext();
+        RateLimitState state = (RateLimitState) ctx.get(CURRENT_REQUEST_STATE);
+        if (state == null) {
+            final Route route = route(urlPathHelper.getPathWithinApplication(request));
+            state = new RateLimitState(route, config().getPolicyIndex().match(request, route, rateLimitUtils));
+            ctx.put(CURRENT_REQUEST_STATE, state);
         }
+        return state;
+    }
 
-        String routeId = route != null ? route.getId() : null;
-
-        RequestContext.getCurrentContext().put(ALREADY_LIMITED, false);
-
-        policies = properties.getPolicies(routeId).stream()
-                .filter(policy -> applyPolicy(request, route, policy))
-                .collect(Collectors.toList());
-
-        addObjectToCurrentRequestContext(CURRENT_REQUEST_POLICY, policies);
-
-        return policies;
+    /**
+     * Looks up the route of a path once, the following requests to the same path reuse it until the routes are
+     * refreshed. The request path comes from the client, so the cache is bounded by the size of the paths and evicts
+     * the least recently used ones, and the paths without a route are never cached.
+     */
+    private Route route(String path) {
+        Route route = routes.getIfPresent(path);
+        if (route == null) {
+            route = routeLocator.getMatchingRoute(path);
+            if (route != null) {
+                routes.put(path, route);
+            }
+        }
+        return route;
     }
 
-    private boolean originIsOnDenyRequest(HttpServletRequest request) {
-        RateLimitProperties.DenyRequest denyRequest = properties.getDenyRequest();
-        return denyRequest.getOrigins().stream()
-                .anyMatch(origin -> RateLimitType.ORIGIN.apply(request, null, rateLimitUtils, origin));
+    @EventListener
+    public void onRoutesRefreshed(RoutesRefreshedEvent event) {
+        routes.invalidateAll();
     }
 
-    private void addObjectToCurrentRequestContext(String key, Object object) {
-        if (object != null) {
-            RequestContext.getCurrentContext().put(key, object);
+    /**
+     * @return The snapshot of the properties, taken on the first request and then on each refresh
+     */
+    ConfigSnapshot config() {
+        ConfigSnapshot snapshot = this.config;
+        if (snapshot == null) {
+            snapshot = ConfigSnapshot.of(properties);
+            this.config = snapshot;
         }
+        return snapshot;
     }
 
-    private boolean applyPolicy(HttpServletRequest request, Route route, Policy policy) {
-        List<MatchType> types = policy.getType();
-        boolean isAlreadyLimited = (boolean) RequestContext.getCurrentContext().get(ALREADY_LIMITED);
-        if (policy.isBreakOnMatch() && !isAlreadyLimited && types.stream().allMatch(type -> type.apply(request, route, rateLimitUtils))) {
-            RequestContext.getCurrentContext().put(ALREADY_LIMITED, true);
+    /**
+     * Takes a new snapshot of the refreshed properties, the requests keep reading the previous one until it is
+     * published. Invalid properties are logged and leave the previous snapshot in place.
+     */
+    @EventListener
+    public void onRefresh(RefreshScopeRefreshedEvent event) {
+        try {
+            this.config = ConfigSnapshot.of(properties);
+        } catch (RuntimeException e) {
+            log.error("Keeping the previous rate limit configuration, the refreshed one is invalid", e);
         }
-        return (types.isEmpty() || types.stream().allMatch(type -> type.apply(request, route, rateLimitUtils))) && !isAlreadyLimited;
     }
 }
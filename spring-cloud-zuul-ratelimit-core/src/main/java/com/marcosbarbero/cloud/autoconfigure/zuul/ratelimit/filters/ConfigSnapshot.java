@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.DenyRequest;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RejectionMode;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.ResponseHeadersVerbosity;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.CidrTrie;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.ClientAddress;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DenyListFile;
+import org.springframework.http.HttpStatus;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * The properties read by the filters on each request, copied out of the refresh scoped {@link RateLimitProperties}
+ * with the policies and the denied origins already compiled. A snapshot never changes, a refresh builds a new one.
+ */
+final class ConfigSnapshot {
+
+    private final boolean enabled;
+    private final PolicyIndex policyIndex;
+    private final CidrTrie deniedOrigins;
+    private final HttpStatus denyResponseStatus;
+    private final ResponseHeadersVerbosity responseHeaders;
+    private final RejectionMode rejectionMode;
+
+    private ConfigSnapshot(RateLimitProperties properties) {
+        final DenyRequest denyRequest = properties.getDenyRequest();
+        this.enabled = properties.isEnabled();
+        this.policyIndex = PolicyIndex.compile(properties.getPolicyList(), properties.getDefaultPolicyList());
+        this.deniedOrigins = denyRequest.getOrigins().isEmpty() ? null : new CidrTrie(denyRequest.getOrigins());
+        this.denyResponseStatus = HttpStatus.valueOf(denyRequest.getResponseStatusCode());
+        this.responseHeaders = properties.getResponseHeaders();
+        this.rejectionMode = properties.getRejectionMode();
+    }
+
+    /**
+     * @throws IllegalArgumentException When a denied origin or the deny response status code is invalid
+     */
+    static ConfigSnapshot of(RateLimitProperties properties) {
+        return new ConfigSnapshot(properties);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    PolicyIndex getPolicyIndex() {
+        return policyIndex;
+    }
+
+    /**
+     * @param denyListFile Origins to deny besides the ones of the properties, may be {@code null}
+     * @return Whether the client of the request is on the deny list
+     */
+    boolean denies(HttpServletRequest request, RateLimitUtils rateLimitUtils, DenyListFile denyListFile) {
+        if (deniedOrigins == null && denyListFile == null) {
+            return false;
+        }
+        final ClientAddress clientAddress = ClientAddress.of(request, rateLimitUtils);
+        return deniedOrigins != null && deniedOrigins.contains(clientAddress)
+                || denyListFile != null && denyListFile.contains(clientAddress);
+    }
+
+    HttpStatus getDenyResponseStatus() {
+        return denyResponseStatus;
+    }
+
+    ResponseHeadersVerbosity getResponseHeaders() {
+        return responseHeaders;
+    }
+
+    RejectionMode getRejectionMode() {
+        return rejectionMode;
+    }
+}
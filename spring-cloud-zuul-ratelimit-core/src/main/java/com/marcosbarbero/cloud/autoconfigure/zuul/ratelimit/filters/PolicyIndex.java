@@ -0,0 +1,197 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy.MatchType;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitType;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.CidrTrie;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RequestIdentity;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.cloud.netflix.zuul.filters.Route;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Policies of every route compiled into arrays of the matchers to check, the cheapest ones first. Types without a
+ * matcher always apply and are left out, so policies without any matcher apply without checking anything. The url
+ * patterns of all the policies of a route are compiled into a single {@link UrlPatternTrie}, matched at most once per
+ * request against the lower cased request uri, and their origins into a single {@link CidrTrie}, looked up at most
+ * once per request with the parsed client address.
+ */
+final class PolicyIndex {
+
+    private static final RoutePolicies NO_POLICIES = new RoutePolicies(new CompiledPolicy[0], null, null);
+    private static final int[] NO_IDS = new int[0];
+
+    private final Map<String, RoutePolicies> routes;
+    private final RoutePolicies defaults;
+
+    private PolicyIndex(final Map<String, List<Policy>> policyList, final List<Policy> defaultPolicyList) {
+        this.routes = new HashMap<>();
+        policyList.forEach((routeId, policies) -> routes.put(routeId, compile(policies)));
+        this.defaults = compile(defaultPolicyList);
+    }
+
+    static PolicyIndex compile(final Map<String, List<Policy>> policyList, final List<Policy> defaultPolicyList) {
+        return new PolicyIndex(policyList, defaultPolicyList);
+    }
+
+    /**
+     * Finds the policies applying to the request, in configuration order, up to the first matching one breaking on
+     * match.
+     */
+    List<Policy> match(final HttpServletRequest request, final Route route, final RateLimitUtils rateLimitUtils) {
+        final RoutePolicies routePolicies = routes.getOrDefault(route != null ? route.getId() : null, defaults);
+        final CompiledPolicy[] policies = routePolicies.policies;
+        if (policies.length == 0) {
+            return Collections.emptyList();
+        }
+        final List<Policy> matched = new ArrayList<>(policies.length);
+        boolean[] origins = null;
+        boolean[] patterns = null;
+        for (CompiledPolicy policy : policies) {
+            if (!policy.matches(request, route, rateLimitUtils)) {
+                continue;
+            }
+            if (policy.origins.length > 0 && origins == null) {
+                origins = routePolicies.origins.match(RequestIdentity.of(request, rateLimitUtils).getClientAddress());
+            }
+            if (!matches(policy.origins, origins)) {
+                continue;
+            }
+            if (policy.patterns.length > 0 && patterns == null) {
+                patterns = routePolicies.patterns.match(RequestIdentity.of(request, rateLimitUtils).getLowerCaseRequestUri());
+            }
+            if (matches(policy.patterns, patterns)) {
+                matched.add(policy.policy);
+                if (policy.policy.isBreakOnMatch()) {
+                    break;
+                }
+            }
+        }
+        return matched;
+    }
+
+    private static RoutePolicies compile(final List<Policy> policies) {
+        if (policies == null || policies.isEmpty()) {
+            return NO_POLICIES;
+        }
+        final Map<String, Integer> origins = new LinkedHashMap<>();
+        final Map<String, Integer> patterns = new LinkedHashMap<>();
+        final CompiledPolicy[] compiled = new CompiledPolicy[policies.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = new CompiledPolicy(policies.get(i), origins, patterns);
+        }
+        return new RoutePolicies(compiled, origins.isEmpty() ? null : new CidrTrie(origins.keySet()),
+                patterns.isEmpty() ? null : new UrlPatternTrie(new ArrayList<>(patterns.keySet())));
+    }
+
+    private static boolean matches(final int[] ids, final boolean[] matched) {
+        for (int id : ids) {
+            if (!matched[id]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[] ids(final List<Integer> ids) {
+        return ids.isEmpty() ? NO_IDS : ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Relative cost of checking a type: plain comparisons first, then lookups of the security context. Origins and url
+     * patterns are matched apart, after all the other types.
+     */
+    private static int cost(final RateLimitType type) {
+        switch (type) {
+            case URL:
+            case HTTPMETHOD:
+            case HTTP_METHOD:
+                return 0;
+            case HTTP_HEADER:
+                return 1;
+            case USER:
+                return 2;
+            default:
+                return 3;
+        }
+    }
+
+    private static final class RoutePolicies {
+
+        private final CompiledPolicy[] policies;
+        private final CidrTrie origins;
+        private final UrlPatternTrie patterns;
+
+        private RoutePolicies(CompiledPolicy[] policies, CidrTrie origins, UrlPatternTrie patterns) {
+            this.policies = policies;
+            this.origins = origins;
+            this.patterns = patterns;
+        }
+    }
+
+    private static final class CompiledPolicy {
+
+        private final Policy policy;
+        private final MatchType[] matchers;
+        private final int[] origins;
+        private final int[] patterns;
+
+        private CompiledPolicy(Policy policy, Map<String, Integer> routeOrigins, Map<String, Integer> routePatterns) {
+            this.policy = policy;
+            final List<MatchType> matchers = new ArrayList<>(policy.getType().size());
+            final List<Integer> origins = new ArrayList<>();
+            final List<Integer> patterns = new ArrayList<>();
+            for (MatchType type : policy.getType()) {
+                if (StringUtils.isEmpty(type.getMatcher())) {
+                    continue;
+                }
+                if (type.getType() == RateLimitType.ORIGIN) {
+                    origins.add(routeOrigins.computeIfAbsent(type.getMatcher(), key -> routeOrigins.size()));
+                } else if (type.getType() == RateLimitType.URL_PATTERN) {
+                    final String pattern = type.getMatcher().toLowerCase();
+                    patterns.add(routePatterns.computeIfAbsent(pattern, key -> routePatterns.size()));
+                } else {
+                    matchers.add(type);
+                }
+            }
+            matchers.sort(Comparator.comparingInt(type -> cost(type.getType())));
+            this.matchers = matchers.toArray(new MatchType[0]);
+            this.origins = ids(origins);
+            this.patterns = ids(patterns);
+        }
+
+        private boolean matches(HttpServletRequest request, Route route, RateLimitUtils rateLimitUtils) {
+            for (MatchType matcher : matchers) {
+                if (!matcher.apply(request, route, rateLimitUtils)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BlockedKeys;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DenyListFile;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RequestIdentity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Servlet filter running ahead of Zuul which turns down the clients on the deny list and the requests this node
+ * already rejected with 429 until their counter resets. Those requests get the same json response as the ones the pre
+ * filter rejects in the RESPONSE rejection mode, the other ones go on to Zuul untouched.
+ */
+public class RateLimitEarlyRejectFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(RateLimitEarlyRejectFilter.class);
+
+    private final RateLimitProperties properties;
+    private final UrlPathHelper urlPathHelper;
+    private final RateLimitUtils rateLimitUtils;
+    private final BlockedKeys blockedKeys;
+    private final DenyListFile denyListFile;
+    private volatile ConfigSnapshot config;
+
+    /**
+     * @param denyListFile Origins to deny besides the ones of the properties, may be {@code null}
+     */
+    public RateLimitEarlyRejectFilter(final RateLimitProperties properties, final UrlPathHelper urlPathHelper,
+                                      final RateLimitUtils rateLimitUtils, final BlockedKeys blockedKeys,
+                                      final DenyListFile denyListFile) {
+        this.properties = properties;
+        this.urlPathHelper = urlPathHelper;
+        this.rateLimitUtils = rateLimitUtils;
+        this.blockedKeys = blockedKeys;
+        this.denyListFile = denyListFile;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        final ConfigSnapshot config = config();
+        if (config.isEnabled()) {
+            if (config.denies(request, rateLimitUtils, denyListFile)) {
+                RejectionResponse.write(response, config.getDenyResponseStatus());
+                return;
+            }
+            final RequestIdentity identity = RequestIdentity.of(request, rateLimitUtils);
+            final long blocked = blockedKeys.remaining(BlockedKeys.requestKey(identity.getMethod(),
+                    identity.getRemoteAddress(), urlPathHelper.getPathWithinApplication(request)));
+            if (blocked > 0) {
+                response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(MILLISECONDS.toSeconds(blocked + 999)));
+                RejectionResponse.write(response, HttpStatus.TOO_MANY_REQUESTS);
+                return;
+            }
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private ConfigSnapshot config() {
+        ConfigSnapshot snapshot = this.config;
+        if (snapshot == null) {
+            snapshot = ConfigSnapshot.of(properties);
+            this.config = snapshot;
+        }
+        return snapshot;
+    }
+
+    @EventListener
+    public void onRefresh(RefreshScopeRefreshedEvent event) {
+        try {
+            this.config = ConfigSnapshot.of(properties);
+        } catch (RuntimeException e) {
+            log.error("Keeping the previous rate limit configuration, the refreshed one is invalid", e);
+        }
+    }
+}
@@ -20,14 +20,17 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitKeyG
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DenyListFile;
 import com.netflix.zuul.context.RequestContext;
-import org.springframework.cloud.netflix.zuul.filters.Route;
 import org.springframework.cloud.netflix.zuul.filters.RouteLocator;
 import org.springframework.web.util.UrlPathHelper;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
 
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.REQUEST_START_TIME;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.POST_TYPE;
 
 /**
@@ -42,7 +45,17 @@ public class RateLimitPostFilter extends AbstractRateLimitFilter {
     public RateLimitPostFilter(final RateLimitProperties properties, final RouteLocator routeLocator,
                                final UrlPathHelper urlPathHelper, final RateLimiter rateLimiter,
                                final RateLimitKeyGenerator rateLimitKeyGenerator, final RateLimitUtils rateLimitUtils) {
-        super(properties, routeLocator, urlPathHelper, rateLimitUtils);
+        this(properties, routeLocator, urlPathHelper, rateLimiter, rateLimitKeyGenerator, rateLimitUtils, null);
+    }
+
+    /**
+     * @param denyListFile Origins to deny besides the ones of the properties, may be {@code null}
+     */
+    public RateLimitPostFilter(final RateLimitProperties properties, final RouteLocator routeLocator,
+                               final UrlPathHelper urlPathHelper, final RateLimiter rateLimiter,
+                               final RateLimitKeyGenerator rateLimitKeyGenerator, final RateLimitUtils rateLimitUtils,
+                               final DenyListFile denyListFile) {
+        super(properties, routeLocator, urlPathHelper, rateLimitUtils, denyListFile);
         this.rateLimiter = rateLimiter;
         this.rateLimitKeyGenerator = rateLimitKeyGenerator;
     }
@@ -57,28 +70,44 @@ public class RateLimitPostFilter extends AbstractRateLimitFilter {
         return properties.getPostFilterOrder();
     }
 
+    /**
+     * Only filters the requests which went through the pre filter and matched a quota policy, the deny list and the
+     * policies were already checked by then.
+     */
     @Override
     public boolean shouldFilter() {
-        return super.shouldFilter() && getRequestStartTime() != null;
-    }
-
-    private Long getRequestStartTime() {
-        final RequestContext ctx = RequestContext.getCurrentContext();
-        final HttpServletRequest request = ctx.getRequest();
-        return (Long) request.getAttribute(REQUEST_START_TIME);
+        if (!config().isEnabled()) {
+            return false;
+        }
+        final RateLimitState state = RateLimitState.current();
+        return state != null && state.isStarted();
     }
 
     @Override
     public Object run() {
-        RequestContext ctx = RequestContext.getCurrentContext();
-        HttpServletRequest request = ctx.getRequest();
-        Route route = route(request);
+        final RateLimitState state = RateLimitState.current();
+        if (state == null || !state.isStarted()) {
+            return null;
+        }
+        final HttpServletRequest request = RequestContext.getCurrentContext().getRequest();
+        final List<Policy> matched = state.getPolicies();
+        final List<String> matchedKeys = state.getKeys();
+        final List<Policy> policies = new ArrayList<>();
+        final List<String> keys = new ArrayList<>();
+        for (int i = 0; i < matched.size(); i++) {
+            final Policy policy = matched.get(i);
+            if (policy.getQuota() != null) {
+                policies.add(policy);
+                keys.add(matchedKeys != null ? matchedKeys.get(i)
+                        : rateLimitKeyGenerator.key(request, state.getRoute(), policy));
+            }
+        }
+        if (policies.isEmpty()) {
+            return null;
+        }
 
-        policy(route, request).forEach(policy -> {
-            long requestTime = System.currentTimeMillis() - getRequestStartTime();
-            String key = rateLimitKeyGenerator.key(request, route, policy);
-            rateLimiter.consume(policy, key, requestTime > 0 ? requestTime : 1);
-        });
+        long requestTime = NANOSECONDS.toMillis(System.nanoTime() - state.getStartTime());
+        rateLimiter.consume(policies, keys, requestTime > 0 ? requestTime : 1);
 
         return null;
     }
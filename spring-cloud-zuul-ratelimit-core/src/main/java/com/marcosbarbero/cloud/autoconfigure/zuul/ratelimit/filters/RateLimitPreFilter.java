@@ -16,34 +16,40 @@
 
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
 
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.ResponseHeadersVerbosity.NONE;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.ResponseHeadersVerbosity.MOST_RESTRICTIVE;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.ResponseHeadersVerbosity.STANDARD;
 import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.ResponseHeadersVerbosity.VERBOSE;
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_LIMIT;
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_QUOTA;
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_REMAINING;
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_REMAINING_QUOTA;
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_RESET;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.ResponseHeaders.LIMIT;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.ResponseHeaders.QUOTA;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.ResponseHeaders.REMAINING;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.ResponseHeaders.REMAINING_QUOTA;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.ResponseHeaders.RESET;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.ResponseHeaders.valueOf;
 import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.RATE_LIMIT_EXCEEDED;
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.REQUEST_START_TIME;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.PRE_TYPE;
 
-import com.google.common.collect.Maps;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitKeyGenerator;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy.MatchType;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitType;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.ResponseHeadersVerbosity;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BlockedKeys;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DenyListFile;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitExceededEvent;
-import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitExceededException;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RequestIdentity;
 import com.netflix.zuul.context.RequestContext;
 
 import java.time.Duration;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.springframework.cloud.netflix.zuul.filters.Route;
 import org.springframework.cloud.netflix.zuul.filters.RouteLocator;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.HttpStatus;
@@ -59,15 +65,44 @@ public class RateLimitPreFilter extends AbstractRateLimitFilter {
     private final RateLimiter rateLimiter;
     private final RateLimitKeyGenerator rateLimitKeyGenerator;
     private final ApplicationEventPublisher eventPublisher;
+    private final ResponseHeaders responseHeaders = new ResponseHeaders();
+    private final UrlPathHelper urlPathHelper;
+    private final BlockedKeys blockedKeys;
 
     public RateLimitPreFilter(final RateLimitProperties properties, final RouteLocator routeLocator,
                               final UrlPathHelper urlPathHelper, final RateLimiter rateLimiter,
                               final RateLimitKeyGenerator rateLimitKeyGenerator, final RateLimitUtils rateLimitUtils,
                               final ApplicationEventPublisher eventPublisher) {
-        super(properties, routeLocator, urlPathHelper, rateLimitUtils);
+        this(properties, routeLocator, urlPathHelper, rateLimiter, rateLimitKeyGenerator, rateLimitUtils, eventPublisher,
+                null);
+    }
+
+    /**
+     * @param denyListFile Origins to deny besides the ones of the properties, may be {@code null}
+     */
+    public RateLimitPreFilter(final RateLimitProperties properties, final RouteLocator routeLocator,
+                              final UrlPathHelper urlPathHelper, final RateLimiter rateLimiter,
+                              final RateLimitKeyGenerator rateLimitKeyGenerator, final RateLimitUtils rateLimitUtils,
+                              final ApplicationEventPublisher eventPublisher, final DenyListFile denyListFile) {
+        this(properties, routeLocator, urlPathHelper, rateLimiter, rateLimitKeyGenerator, rateLimitUtils, eventPublisher,
+                denyListFile, null);
+    }
+
+    /**
+     * @param denyListFile Origins to deny besides the ones of the properties, may be {@code null}
+     * @param blockedKeys  Where to record the rejected requests for the early reject filter, may be {@code null}
+     */
+    public RateLimitPreFilter(final RateLimitProperties properties, final RouteLocator routeLocator,
+                              final UrlPathHelper urlPathHelper, final RateLimiter rateLimiter,
+                              final RateLimitKeyGenerator rateLimitKeyGenerator, final RateLimitUtils rateLimitUtils,
+                              final ApplicationEventPublisher eventPublisher, final DenyListFile denyListFile,
+                              final BlockedKeys blockedKeys) {
+        super(properties, routeLocator, urlPathHelper, rateLimitUtils, denyListFile);
         this.rateLimiter = rateLimiter;
         this.rateLimitKeyGenerator = rateLimitKeyGenerator;
         this.eventPublisher = eventPublisher;
+        this.urlPathHelper = urlPathHelper;
+        this.blockedKeys = blockedKeys;
     }
 
     @Override
@@ -85,37 +120,37 @@ public class RateLimitPreFilter extends AbstractRateLimitFilter {
         final RequestContext ctx = RequestContext.getCurrentContext();
         final HttpServletResponse response = ctx.getResponse();
         final HttpServletRequest request = ctx.getRequest();
-        final Route route = route(request);
-
-        policy(route, request).forEach(policy -> {
-            Map<String, String> responseHeaders = Maps.newHashMap();
-
-            final String key = rateLimitKeyGenerator.key(request, route, policy);
-            final Rate rate = rateLimiter.consume(policy, key, null);
+        final RateLimitState state = state(request);
+        final List<Policy> policies = state.getPolicies();
+        List<String> keys = state.getKeys();
+        if (keys == null) {
+            keys = new ArrayList<>(policies.size());
+            for (Policy policy : policies) {
+                keys.add(rateLimitKeyGenerator.key(request, state.getRoute(), policy));
+            }
+            state.setKeys(keys);
+        }
+        final List<Rate> rates = rateLimiter.consume(policies, keys, null);
+
+        final ResponseHeadersVerbosity verbosity = config().getResponseHeaders();
+        if (verbosity == MOST_RESTRICTIVE && !rates.isEmpty()) {
+            final int index = mostRestrictive(policies, rates);
+            addHeaders(response, ResponseHeaders.STANDARD, policies.get(index), rates.get(index));
+        }
+        for (int i = 0; i < rates.size(); i++) {
+            final Policy policy = policies.get(i);
+            final Rate rate = rates.get(i);
+            if (verbosity == STANDARD || verbosity == VERBOSE) {
+                addHeaders(response, verbosity == VERBOSE ? responseHeaders.verbose(keys.get(i)) : ResponseHeaders.STANDARD,
+                        policy, rate);
+            }
 
             final Long limit = policy.getLimit();
             final Long remaining = rate.getRemaining();
-            if (limit != null) {
-                responseHeaders.put(HEADER_LIMIT, String.valueOf(limit));
-                responseHeaders.put(HEADER_REMAINING, String.valueOf(Math.max(remaining, 0)));
-            }
-
             final Duration quota = policy.getQuota();
             final Long remainingQuota = rate.getRemainingQuota();
             if (quota != null) {
-                request.setAttribute(REQUEST_START_TIME, System.currentTimeMillis());
-                responseHeaders.put(HEADER_QUOTA, String.valueOf(quota.getSeconds()));
-                responseHeaders.put(HEADER_REMAINING_QUOTA, String.valueOf(MILLISECONDS.toSeconds(Math.max(remainingQuota, 0))));
-            }
-
-            responseHeaders.put(HEADER_RESET, String.valueOf(rate.getReset()));
-
-            if (!NONE.equals(properties.getResponseHeaders())) {
-                final String httpHeaderKey = key.replaceAll("[^A-Za-z0-9-.]", "_").replaceAll("__", "_");
-                for (Map.Entry<String, String> headersEntry : responseHeaders.entrySet()) {
-                    String header = VERBOSE.equals(properties.getResponseHeaders()) ? headersEntry.getKey() + "-" + httpHeaderKey : headersEntry.getKey();
-                    response.setHeader(header, headersEntry.getValue());
-                }
+                state.start();
             }
 
             if ((limit != null && remaining < 0) || (quota != null && remainingQuota < 0)) {
@@ -123,12 +158,69 @@ public class RateLimitPreFilter extends AbstractRateLimitFilter {
                 ctx.put(RATE_LIMIT_EXCEEDED, "true");
                 ctx.setSendZuulResponse(false);
 
-                eventPublisher.publishEvent(new RateLimitExceededEvent(this, policy, rateLimitUtils.getRemoteAddress(request)));
+                final RequestIdentity identity = RequestIdentity.of(request, rateLimitUtils);
+                eventPublisher.publishEvent(new RateLimitExceededEvent(this, policy, identity.getRemoteAddress()));
+                if (blockedKeys != null && rate.getReset() != null && dependsOnPathOnly(policy)) {
+                    blockedKeys.block(BlockedKeys.requestKey(identity.getMethod(), identity.getRemoteAddress(),
+                            urlPathHelper.getPathWithinApplication(request)), rate.getReset());
+                }
 
-                throw new RateLimitExceededException();
+                reject(ctx, HttpStatus.TOO_MANY_REQUESTS);
+                return null;
             }
-        });
+        }
 
         return null;
     }
+
+    /**
+     * @return Whether the key of the policy is the same for all the requests with the same method, origin and path
+     */
+    private static boolean dependsOnPathOnly(Policy policy) {
+        for (MatchType matchType : policy.getType()) {
+            final RateLimitType type = matchType.getType();
+            if (type != RateLimitType.ORIGIN && !type.isRouteWide()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addHeaders(HttpServletResponse response, String[] headers, Policy policy, Rate rate) {
+        final Long limit = policy.getLimit();
+        if (limit != null) {
+            response.setHeader(headers[LIMIT], valueOf(limit));
+            response.setHeader(headers[REMAINING], valueOf(Math.max(rate.getRemaining(), 0)));
+        }
+        final Duration quota = policy.getQuota();
+        if (quota != null) {
+            response.setHeader(headers[QUOTA], valueOf(quota.getSeconds()));
+            response.setHeader(headers[REMAINING_QUOTA], valueOf(MILLISECONDS.toSeconds(Math.max(rate.getRemainingQuota(), 0))));
+        }
+        response.setHeader(headers[RESET], valueOf(rate.getReset()));
+    }
+
+    /**
+     * @return The index of the policy with the smallest share of its limit or quota left, from the rates at hand
+     */
+    private static int mostRestrictive(List<Policy> policies, List<Rate> rates) {
+        int index = 0;
+        double lowest = Double.MAX_VALUE;
+        for (int i = 0; i < rates.size(); i++) {
+            final Policy policy = policies.get(i);
+            final Rate rate = rates.get(i);
+            double left = Double.MAX_VALUE;
+            if (policy.getLimit() != null) {
+                left = rate.getRemaining() / (double) Math.max(policy.getLimit(), 1L);
+            }
+            if (policy.getQuota() != null) {
+                left = Math.min(left, rate.getRemainingQuota() / (double) Math.max(policy.getQuota().toMillis(), 1L));
+            }
+            if (left < lowest) {
+                lowest = left;
+                index = i;
+            }
+        }
+        return index;
+    }
 }
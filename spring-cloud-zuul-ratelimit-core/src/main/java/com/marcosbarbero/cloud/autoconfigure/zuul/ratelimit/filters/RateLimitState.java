@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.netflix.zuul.context.RequestContext;
+import org.springframework.cloud.netflix.zuul.filters.Route;
+
+import java.util.List;
+
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.CURRENT_REQUEST_STATE;
+
+/**
+ * Rate limit state of a request, kept in its {@link RequestContext} by the first filter resolving it. The post filter
+ * reuses the route, the matched policies and the keys of the pre filter instead of resolving them again.
+ */
+public final class RateLimitState {
+
+    private final Route route;
+    private final List<Policy> policies;
+    private List<String> keys;
+    private long startTime;
+    private boolean started;
+
+    /**
+     * @param route    The matching route, may be {@code null}
+     * @param policies The policies matching the request
+     */
+    public RateLimitState(Route route, List<Policy> policies) {
+        this.route = route;
+        this.policies = policies;
+    }
+
+    /**
+     * @return The state of the current request, {@code null} when no rate limit filter resolved it yet
+     */
+    public static RateLimitState current() {
+        return (RateLimitState) RequestContext.getCurrentContext().get(CURRENT_REQUEST_STATE);
+    }
+
+    public Route getRoute() {
+        return route;
+    }
+
+    public List<Policy> getPolicies() {
+        return policies;
+    }
+
+    /**
+     * @return The key of each policy, in the same order, {@code null} until the pre filter generated them
+     */
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    void setKeys(List<String> keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Marks the start of the request, the time it takes is counted against the quota policies by the post filter.
+     * Only the first call counts.
+     */
+    public void start() {
+        if (!started) {
+            startTime = System.nanoTime();
+            started = true;
+        }
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * @return The {@link System#nanoTime()} of the start of the request
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+}
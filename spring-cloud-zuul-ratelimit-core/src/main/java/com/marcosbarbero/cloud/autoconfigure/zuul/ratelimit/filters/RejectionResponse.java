@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Response of the rejected requests in the {@link com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RejectionMode#RESPONSE}
+ * mode and of the requests turned down by the {@link RateLimitEarlyRejectFilter}, a small json body serialized once per
+ * status code.
+ */
+final class RejectionResponse {
+
+    private static final Map<HttpStatus, byte[]> BODIES = new ConcurrentHashMap<>();
+
+    private RejectionResponse() {
+    }
+
+    static void write(HttpServletResponse response, HttpStatus status) throws IOException {
+        final byte[] body = body(status);
+        response.setStatus(status.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    static byte[] body(HttpStatus status) {
+        return BODIES.computeIfAbsent(status, key -> ("{\"status\":" + key.value() + ",\"error\":\""
+                + key.getReasonPhrase() + "\"}").getBytes(StandardCharsets.UTF_8));
+    }
+}
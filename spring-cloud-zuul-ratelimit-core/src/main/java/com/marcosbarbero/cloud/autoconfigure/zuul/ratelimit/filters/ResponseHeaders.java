@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_LIMIT;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_QUOTA;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_REMAINING;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_REMAINING_QUOTA;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_RESET;
+
+/**
+ * Names and values of the rate limit response headers. The verbose names of a key are built once and kept until the
+ * cache is full, and the values of small numbers are shared strings.
+ */
+final class ResponseHeaders {
+
+    static final int LIMIT = 0;
+    static final int REMAINING = 1;
+    static final int QUOTA = 2;
+    static final int REMAINING_QUOTA = 3;
+    static final int RESET = 4;
+
+    static final String[] STANDARD = {HEADER_LIMIT, HEADER_REMAINING, HEADER_QUOTA, HEADER_REMAINING_QUOTA, HEADER_RESET};
+
+    private static final int MAX_CACHED_KEYS = 10_000;
+    private static final String[] NUMBERS = new String[1024];
+
+    static {
+        for (int i = 0; i < NUMBERS.length; i++) {
+            NUMBERS[i] = Integer.toString(i);
+        }
+    }
+
+    private final Map<String, String[]> verbose = new ConcurrentHashMap<>();
+
+    /**
+     * @return The header names suffixed with the sanitized key, in the order of the {@link #STANDARD} names
+     */
+    String[] verbose(String key) {
+        String[] names = verbose.get(key);
+        if (names == null) {
+            if (verbose.size() >= MAX_CACHED_KEYS) {
+                verbose.clear();
+            }
+            final String suffix = "-" + sanitize(key);
+            names = new String[STANDARD.length];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = STANDARD[i].concat(suffix);
+            }
+            verbose.put(key, names);
+        }
+        return names;
+    }
+
+    static String valueOf(long value) {
+        return value >= 0 && value < NUMBERS.length ? NUMBERS[(int) value] : Long.toString(value);
+    }
+
+    static String valueOf(Long value) {
+        return value != null ? valueOf(value.longValue()) : "null";
+    }
+
+    /**
+     * Replaces the characters which are not letters, digits, '-' or '.' with '_', then halves the runs of '_'
+     * rounding up, in one pass. Same as {@code key.replaceAll("[^A-Za-z0-9-.]", "_").replaceAll("__", "_")}.
+     */
+    static String sanitize(String key) {
+        StringBuilder builder = null;
+        int underscores = 0;
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            final boolean kept = c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9'
+                    || c == '-' || c == '.';
+            if (kept) {
+                underscores = 0;
+            } else {
+                underscores++;
+            }
+            final boolean dropped = underscores > 0 && underscores % 2 == 0;
+            if (builder == null && (c != '_' && !kept || dropped)) {
+                builder = new StringBuilder(key.length()).append(key, 0, i);
+            }
+            if (builder != null && !dropped) {
+                builder.append(kept ? c : '_');
+            }
+        }
+        return builder != null ? builder.toString() : key;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
+
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Ant style path patterns compiled into a trie of path segments, so all the patterns of a route are matched against a
+ * path in a single walk. Literal segments are looked up by hash, the ones with wildcards or uri template variables are
+ * compiled once into regular expressions. Matches the same paths as {@link org.springframework.util.AntPathMatcher}.
+ */
+final class UrlPatternTrie {
+
+    private static final String SEPARATOR = "/";
+    private static final String DOUBLE_STAR = "**";
+    private static final Pattern GLOB_PATTERN = Pattern.compile("\\?|\\*|\\{((?:\\{[^/]+?}|[^/{}]|\\\\[{}])+?)}");
+
+    private final Node root = new Node();
+    private final int size;
+
+    /**
+     * @param patterns The patterns, matched results are reported at the same index
+     */
+    UrlPatternTrie(final List<String> patterns) {
+        this.size = patterns.size();
+        for (int id = 0; id < patterns.size(); id++) {
+            add(id, patterns.get(id));
+        }
+    }
+
+    /**
+     * @param path The path to match
+     * @return Whether the path matches each of the patterns, by pattern index
+     */
+    boolean[] match(final String path) {
+        final boolean[] matched = new boolean[size];
+        final String[] segments = StringUtils.tokenizeToStringArray(path, SEPARATOR, false, true);
+        match(root, segments, 0, path.startsWith(SEPARATOR), path.endsWith(SEPARATOR), matched);
+        return matched;
+    }
+
+    private void add(final int id, final String pattern) {
+        final String[] segments = StringUtils.tokenizeToStringArray(pattern, SEPARATOR, false, true);
+        Node node = root;
+        boolean doubleStar = false;
+        for (String segment : segments) {
+            if (DOUBLE_STAR.equals(segment)) {
+                doubleStar = true;
+                if (node.doubleStar == null) {
+                    node.doubleStar = new Node();
+                }
+                node = node.doubleStar;
+            } else if (isLiteral(segment)) {
+                node = node.literals.computeIfAbsent(segment, key -> new Node());
+            } else {
+                node = node.wildcard(segment);
+            }
+        }
+        node.terminals.add(new Terminal(id, pattern.startsWith(SEPARATOR), pattern.endsWith(SEPARATOR), doubleStar));
+    }
+
+    private static void match(final Node node, final String[] segments, final int index, final boolean leadingSlash,
+                              final boolean trailingSlash, final boolean[] matched) {
+        if (node.doubleStar != null) {
+            for (int next = index; next <= segments.length; next++) {
+                match(node.doubleStar, segments, next, leadingSlash, trailingSlash, matched);
+            }
+        }
+        if (index == segments.length) {
+            for (Terminal terminal : node.terminals) {
+                if (terminal.leadingSlash == leadingSlash
+                        && (terminal.doubleStar || terminal.trailingSlash == trailingSlash)) {
+                    matched[terminal.id] = true;
+                }
+            }
+            // as in AntPathMatcher, a pattern ending with a single star segment also matches its parent directory
+            if (trailingSlash) {
+                for (Wildcard wildcard : node.wildcards) {
+                    if ("*".equals(wildcard.segment)) {
+                        for (Terminal terminal : wildcard.node.terminals) {
+                            if (!terminal.doubleStar && terminal.leadingSlash == leadingSlash) {
+                                matched[terminal.id] = true;
+                            }
+                        }
+                    }
+                }
+            }
+            return;
+        }
+        final Node literal = node.literals.get(segments[index]);
+        if (literal != null) {
+            match(literal, segments, index + 1, leadingSlash, trailingSlash, matched);
+        }
+        for (Wildcard wildcard : node.wildcards) {
+            if (wildcard.pattern.matcher(segments[index]).matches()) {
+                match(wildcard.node, segments, index + 1, leadingSlash, trailingSlash, matched);
+            }
+        }
+    }
+
+    private static boolean isLiteral(final String segment) {
+        return segment.indexOf('*') < 0 && segment.indexOf('?') < 0 && segment.indexOf('{') < 0;
+    }
+
+    /**
+     * Same translation as the segment matcher of {@link org.springframework.util.AntPathMatcher}.
+     */
+    private static Pattern compile(final String segment) {
+        final StringBuilder regex = new StringBuilder();
+        final Matcher matcher = GLOB_PATTERN.matcher(segment);
+        int end = 0;
+        while (matcher.find()) {
+            regex.append(quote(segment, end, matcher.start()));
+            final String match = matcher.group();
+            if ("?".equals(match)) {
+                regex.append('.');
+            } else if ("*".equals(match)) {
+                regex.append(".*");
+            } else if (match.startsWith("{") && match.endsWith("}")) {
+                final int colon = match.indexOf(':');
+                if (colon == -1) {
+                    regex.append("((?s).*)");
+                } else {
+                    regex.append('(').append(match, colon + 1, match.length() - 1).append(')');
+                }
+            }
+            end = matcher.end();
+        }
+        regex.append(quote(segment, end, segment.length()));
+        return Pattern.compile(regex.toString());
+    }
+
+    private static String quote(final String segment, final int start, final int end) {
+        return start == end ? "" : Pattern.quote(segment.substring(start, end));
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> literals = new HashMap<>();
+        private final List<Wildcard> wildcards = new ArrayList<>();
+        private final List<Terminal> terminals = new ArrayList<>();
+        private Node doubleStar;
+
+        private Node wildcard(String segment) {
+            for (Wildcard wildcard : wildcards) {
+                if (wildcard.segment.equals(segment)) {
+                    return wildcard.node;
+                }
+            }
+            final Wildcard wildcard = new Wildcard(segment, compile(segment), new Node());
+            wildcards.add(wildcard);
+            return wildcard.node;
+        }
+    }
+
+    private static final class Wildcard {
+
+        private final String segment;
+        private final Pattern pattern;
+        private final Node node;
+
+        private Wildcard(String segment, Pattern pattern, Node node) {
+            this.segment = segment;
+            this.pattern = pattern;
+            this.node = node;
+        }
+    }
+
+    private static final class Terminal {
+
+        private final int id;
+        private final boolean leadingSlash;
+        private final boolean trailingSlash;
+        private final boolean doubleStar;
+
+        private Terminal(int id, boolean leadingSlash, boolean trailingSlash, boolean doubleStar) {
+            this.id = id;
+            this.leadingSlash = leadingSlash;
+            this.trailingSlash = trailingSlash;
+            this.doubleStar = doubleStar;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Origins compiled for matching client addresses: IPv4 and IPv6 CIDR blocks in a binary trie per address family,
+ * single addresses in a hash map keyed by their bytes, so that any notation of an address matches, and values which
+ * are not addresses, matched as is, in another one. Each origin is
+ * added with an id, a lookup walks the trie once along the client address bits and reports the ids of all the origins
+ * containing it.
+ */
+public final class CidrTrie {
+
+    private static final int[] NO_IDS = new int[0];
+
+    private final Node ipv4 = new Node();
+    private final Node ipv6 = new Node();
+    private final Map<ByteBuffer, int[]> addresses = new HashMap<>();
+    private final Map<String, int[]> values = new HashMap<>();
+    private final int size;
+
+    /**
+     * @param origins The origins: IPv4 or IPv6 addresses, CIDR blocks such as 10.0.0.0/8 or 2001:db8::/32, or any
+     *                other value, matched as is; the index of an origin is its id
+     * @throws IllegalArgumentException when a CIDR block is not valid
+     */
+    public CidrTrie(final Iterable<String> origins) {
+        int id = 0;
+        for (String origin : origins) {
+            add(origin, id++);
+        }
+        this.size = id;
+    }
+
+    /**
+     * @return The number of origins, ids go from 0 to size - 1
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(final ClientAddress clientAddress) {
+        if (values.containsKey(clientAddress.getValue())) {
+            return true;
+        }
+        final byte[] address = clientAddress.getAddress();
+        if (address == null) {
+            return false;
+        }
+        if (addresses.containsKey(ByteBuffer.wrap(address))) {
+            return true;
+        }
+        Node node = address.length == 4 ? ipv4 : ipv6;
+        for (int bit = 0; node != null; bit++) {
+            if (node.ids.length > 0) {
+                return true;
+            }
+            node = bit < address.length * 8 ? node.child(bit(address, bit)) : null;
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether the client address matches each origin, by id
+     */
+    public boolean[] match(final ClientAddress clientAddress) {
+        final boolean[] matched = new boolean[size];
+        mark(values.get(clientAddress.getValue()), matched);
+        final byte[] address = clientAddress.getAddress();
+        if (address == null) {
+            return matched;
+        }
+        mark(addresses.get(ByteBuffer.wrap(address)), matched);
+        Node node = address.length == 4 ? ipv4 : ipv6;
+        for (int bit = 0; node != null; bit++) {
+            mark(node.ids, matched);
+            node = bit < address.length * 8 ? node.child(bit(address, bit)) : null;
+        }
+        return matched;
+    }
+
+    /**
+     * Matches a single origin without compiling it, for one-off checks.
+     */
+    public static boolean matches(final String origin, final ClientAddress clientAddress) {
+        final int slash = origin.indexOf('/');
+        if (slash < 0) {
+            final byte[] single = ClientAddress.parse(origin);
+            return single == null ? origin.equals(clientAddress.getValue())
+                    : Arrays.equals(single, clientAddress.getAddress());
+        }
+        final byte[] network = network(origin, slash);
+        final int prefix = prefix(origin, slash, network);
+        final byte[] address = clientAddress.getAddress();
+        if (address == null || address.length != network.length) {
+            return false;
+        }
+        for (int bit = 0; bit < prefix; bit++) {
+            if (bit(address, bit) != bit(network, bit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(final String origin, final int id) {
+        final int slash = origin.indexOf('/');
+        if (slash < 0) {
+            final byte[] single = ClientAddress.parse(origin);
+            if (single == null) {
+                values.merge(origin, new int[]{id}, CidrTrie::concat);
+            } else {
+                addresses.merge(ByteBuffer.wrap(single), new int[]{id}, CidrTrie::concat);
+            }
+            return;
+        }
+        final byte[] network = network(origin, slash);
+        final int prefix = prefix(origin, slash, network);
+        if (prefix == network.length * 8) {
+            addresses.merge(ByteBuffer.wrap(network), new int[]{id}, CidrTrie::concat);
+            return;
+        }
+        Node node = network.length == 4 ? ipv4 : ipv6;
+        for (int bit = 0; bit < prefix; bit++) {
+            node = node.childOrNew(bit(network, bit));
+        }
+        node.ids = concat(node.ids, new int[]{id});
+    }
+
+    private static byte[] network(final String origin, final int slash) {
+        final byte[] network = ClientAddress.parse(origin.substring(0, slash));
+        if (network == null) {
+            throw new IllegalArgumentException("Invalid CIDR block: " + origin);
+        }
+        return network;
+    }
+
+    private static int prefix(final String origin, final int slash, final byte[] network) {
+        final int prefix;
+        try {
+            prefix = Integer.parseInt(origin.substring(slash + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid CIDR block: " + origin, e);
+        }
+        if (prefix < 0 || prefix > network.length * 8) {
+            throw new IllegalArgumentException("Invalid CIDR block: " + origin);
+        }
+        return prefix;
+    }
+
+    private static int bit(final byte[] address, final int bit) {
+        return (address[bit >> 3] >> (7 - (bit & 7))) & 1;
+    }
+
+    private static void mark(final int[] ids, final boolean[] matched) {
+        if (ids != null) {
+            for (int id : ids) {
+                matched[id] = true;
+            }
+        }
+    }
+
+    private static int[] concat(final int[] ids, final int[] more) {
+        final int[] all = Arrays.copyOf(ids, ids.length + more.length);
+        System.arraycopy(more, 0, all, ids.length, more.length);
+        return all;
+    }
+
+    private static final class Node {
+
+        private final Node[] children = new Node[2];
+        private int[] ids = NO_IDS;
+
+        private Node child(int bit) {
+            return children[bit];
+        }
+
+        private Node childOrNew(int bit) {
+            if (children[bit] == null) {
+                children[bit] = new Node();
+            }
+            return children[bit];
+        }
+    }
+}
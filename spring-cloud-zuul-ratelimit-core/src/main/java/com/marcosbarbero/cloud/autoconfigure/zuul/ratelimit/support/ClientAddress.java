@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import com.google.common.net.InetAddresses;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Remote address of a request, resolved and parsed once per request as part of its {@link RequestIdentity}.
+ */
+public final class ClientAddress {
+
+    private final String value;
+    private final byte[] address;
+
+    ClientAddress(String value) {
+        this.value = value;
+        this.address = parse(value);
+    }
+
+    public static ClientAddress of(final HttpServletRequest request, final RateLimitUtils rateLimitUtils) {
+        return RequestIdentity.of(request, rateLimitUtils).getClientAddress();
+    }
+
+    /**
+     * @param value An IPv4 or IPv6 address literal, host names are never resolved
+     * @return The address bytes, 4 for IPv4 and IPv4 mapped IPv6 addresses, 16 for IPv6, or {@code null} when the
+     * value is not an address literal
+     */
+    static byte[] parse(final String value) {
+        if (value == null || value.isEmpty() || Character.digit(value.charAt(0), 16) < 0 && value.charAt(0) != ':') {
+            return null;
+        }
+        try {
+            return InetAddresses.forString(value).getAddress();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The remote address as returned by {@link RateLimitUtils#getRemoteAddress(HttpServletRequest)}
+     */
+    public String getValue() {
+        return value;
+    }
+
+    byte[] getAddress() {
+        return address;
+    }
+}
@@ -16,18 +16,31 @@
 
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
 
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitKeyGenerator;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
 import org.springframework.cloud.netflix.zuul.filters.Route;
+import org.springframework.context.event.EventListener;
 
 import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.StringJoiner;
 
 /**
- * Default KeyGenerator implementation.
+ * Default KeyGenerator implementation. With compact keys the client part of the key is replaced by the url safe Base64
+ * form of its SHA-256 hash truncated to 128 bits, 22 characters whatever the length of the policy type values. The
+ * client part comes from the request, so the hash is a cryptographic one: clients cannot craft values sharing the key
+ * of another client. Each policy may turn compact keys on or off for its own keys, otherwise the global setting
+ * applies.
  *
  * @author roxspring (github user)
  * @author Marcos Barbero
@@ -35,8 +48,14 @@ import java.util.StringJoiner;
  */
 public class DefaultRateLimitKeyGenerator implements RateLimitKeyGenerator {
 
+    private static final Logger log = LoggerFactory.getLogger(DefaultRateLimitKeyGenerator.class);
+    private static final HashFunction HASH_FUNCTION = Hashing.sha256();
+    private static final int HASH_BYTES = 16;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
     private final RateLimitProperties properties;
     private final RateLimitUtils rateLimitUtils;
+    private volatile Settings settings;
 
     public DefaultRateLimitKeyGenerator(RateLimitProperties properties, RateLimitUtils rateLimitUtils) {
         this.properties = properties;
@@ -45,17 +64,75 @@ public class DefaultRateLimitKeyGenerator implements RateLimitKeyGenerator {
 
     @Override
     public String key(final HttpServletRequest request, final Route route, final Policy policy) {
+        final Settings settings = settings();
         final StringJoiner joiner = new StringJoiner(":");
-        joiner.add(properties.getKeyPrefix());
-        if (route != null) {
-            joiner.add(route.getId());
-        }
+        joiner.add(settings.keyPrefix);
+        final StringJoiner client = new StringJoiner(":");
         policy.getType().forEach(matchType -> {
             String key = matchType.key(request, route, rateLimitUtils);
             if (StringUtils.isNotEmpty(key)) {
-                joiner.add(key);
+                client.add(key);
             }
         });
-        return joiner.toString();
+        final boolean compactKeys = policy.getCompactKeys() != null ? policy.getCompactKeys() : settings.compactKeys;
+        final String clientKey = client.length() > 0 && compactKeys ? compact(client.toString()) : client.toString();
+
+        if (!settings.hashTag) {
+            if (route != null) {
+                joiner.add(route.getId());
+            }
+            return !clientKey.isEmpty() ? joiner.add(clientKey).toString() : joiner.toString();
+        }
+
+        if (!clientKey.isEmpty()) {
+            if (route != null) {
+                joiner.add(route.getId());
+            }
+            return joiner.add(hashTag(clientKey)).toString();
+        }
+        return route != null ? joiner.add(hashTag(route.getId())).toString() : hashTag(joiner.toString());
+    }
+
+    /**
+     * Reads the key settings again from the refreshed properties.
+     */
+    @EventListener
+    public void onRefresh(RefreshScopeRefreshedEvent event) {
+        this.settings = new Settings(properties);
+    }
+
+    private Settings settings() {
+        Settings current = this.settings;
+        if (current == null) {
+            current = new Settings(properties);
+            this.settings = current;
+        }
+        return current;
+    }
+
+    private static String compact(final String value) {
+        final byte[] digest = HASH_FUNCTION.hashString(value, StandardCharsets.UTF_8).asBytes();
+        final String hash = ENCODER.encodeToString(Arrays.copyOf(digest, HASH_BYTES));
+        if (log.isDebugEnabled()) {
+            log.debug("Rate limit key part {} stands for {}", hash, value);
+        }
+        return hash;
+    }
+
+    private static String hashTag(final String value) {
+        return "{" + value + "}";
+    }
+
+    private static final class Settings {
+
+        private final String keyPrefix;
+        private final boolean compactKeys;
+        private final boolean hashTag;
+
+        private Settings(RateLimitProperties properties) {
+            this.keyPrefix = properties.getKeyPrefix();
+            this.compactKeys = properties.isCompactKeys();
+            this.hashTag = properties.getRedis().isHashTag();
+        }
     }
 }
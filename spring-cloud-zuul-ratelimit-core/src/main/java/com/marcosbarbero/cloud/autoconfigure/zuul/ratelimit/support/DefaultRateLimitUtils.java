@@ -30,7 +30,7 @@ import static org.springframework.cloud.netflix.zuul.filters.support.FilterConst
 public class DefaultRateLimitUtils implements RateLimitUtils {
 
     private static final String ANONYMOUS_USER = "anonymous";
-    private static final String X_FORWARDED_FOR_HEADER_DELIMITER = ",";
+    private static final char X_FORWARDED_FOR_HEADER_DELIMITER = ',';
 
     private final RateLimitProperties properties;
 
@@ -47,11 +47,41 @@ public class DefaultRateLimitUtils implements RateLimitUtils {
     public String getRemoteAddress(final HttpServletRequest request) {
         String xForwardedFor = request.getHeader(X_FORWARDED_FOR_HEADER);
         if (properties.isBehindProxy() && xForwardedFor != null) {
-            return xForwardedFor.split(X_FORWARDED_FOR_HEADER_DELIMITER)[0].trim();
+            return forwardedAddress(xForwardedFor, properties.getTrustedProxyDepth());
         }
         return request.getRemoteAddr();
     }
 
+    /**
+     * Picks the client address out of a X-Forwarded-For header without splitting it.
+     *
+     * @param xForwardedFor The header value
+     * @param depth         The number of trusted proxies, zero for the leftmost entry
+     * @return The trimmed entry at {@code depth} positions from the right, or the leftmost one
+     */
+    static String forwardedAddress(final String xForwardedFor, final int depth) {
+        int start = 0;
+        int end = xForwardedFor.length();
+        if (depth == 0) {
+            final int delimiter = xForwardedFor.indexOf(X_FORWARDED_FOR_HEADER_DELIMITER);
+            end = delimiter < 0 ? end : delimiter;
+        } else {
+            int delimiter = xForwardedFor.lastIndexOf(X_FORWARDED_FOR_HEADER_DELIMITER);
+            for (int i = 1; i < depth && delimiter >= 0; i++) {
+                end = delimiter;
+                delimiter = xForwardedFor.lastIndexOf(X_FORWARDED_FOR_HEADER_DELIMITER, end - 1);
+            }
+            start = delimiter + 1;
+        }
+        while (start < end && xForwardedFor.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && xForwardedFor.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return start == 0 && end == xForwardedFor.length() ? xForwardedFor : xForwardedFor.substring(start, end);
+    }
+
     @Override
     public Set<String> getUserRoles() {
         throw new UnsupportedOperationException("Not supported");
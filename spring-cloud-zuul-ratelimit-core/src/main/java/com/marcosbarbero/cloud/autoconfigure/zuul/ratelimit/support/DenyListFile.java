@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deny list read from a text file, one origin per line as in the deny request origins, blank lines and lines starting
+ * with # are ignored. The file is read and compiled into a {@link CidrTrie} by a background thread, which
+ * checks it for changes at a fixed interval and swaps the new trie in once it is complete; requests always see a whole
+ * list. When the file cannot be read or holds an invalid CIDR block the previous list is kept.
+ */
+public final class DenyListFile implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(DenyListFile.class);
+
+    private final Path path;
+    private final ScheduledExecutorService watcher;
+    private volatile CidrTrie origins = new CidrTrie(Collections.emptyList());
+    private FileTime lastModified;
+    private long size = -1;
+
+    public DenyListFile(final Path path, final Duration checkInterval) {
+        if (checkInterval.toMillis() < 1) {
+            throw new IllegalArgumentException("Invalid deny list file check interval: " + checkInterval
+                    + ", it must be at least 1ms");
+        }
+        this.path = path;
+        reload();
+        this.watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ratelimit-deny-list");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long interval = checkInterval.toMillis();
+        this.watcher.scheduleWithFixedDelay(this::reload, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean contains(final ClientAddress clientAddress) {
+        return origins.contains(clientAddress);
+    }
+
+    /**
+     * @return The number of origins in the current list
+     */
+    public int size() {
+        return origins.size();
+    }
+
+    @Override
+    public void close() {
+        watcher.shutdownNow();
+    }
+
+    synchronized void reload() {
+        try {
+            final FileTime modified = Files.getLastModifiedTime(path);
+            final long length = Files.size(path);
+            if (modified.equals(lastModified) && length == size) {
+                return;
+            }
+            final CidrTrie loaded = new CidrTrie(read(path));
+            this.origins = loaded;
+            this.lastModified = modified;
+            this.size = length;
+            log.info("Loaded {} denied origins from {}", loaded.size(), path);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed loading the deny list from {}, keeping the previous one", path, e);
+        }
+    }
+
+    static List<String> read(final Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            final List<String> origins = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && line.charAt(0) != '#') {
+                    origins.add(line);
+                }
+            }
+            return origins;
+        }
+    }
+}
@@ -34,10 +34,28 @@ public final class RateLimitConstants {
     public static final String HEADER_RESET = "X-RateLimit-Reset";
 
     // Request Context Keys
+    public static final String CURRENT_REQUEST_STATE = "rateLimitRequestState";
+    public static final String RATE_LIMIT_EXCEEDED = "rateLimitExceeded";
+
+    /**
+     * @deprecated No longer set, the start time is kept in the state under {@link #CURRENT_REQUEST_STATE}
+     */
+    @Deprecated
     public static final String REQUEST_START_TIME = "rateLimitRequestStartTime";
+    /**
+     * @deprecated No longer set, the route is kept in the state under {@link #CURRENT_REQUEST_STATE}
+     */
+    @Deprecated
     public static final String CURRENT_REQUEST_ROUTE = "rateLimitRequestRoute";
+    /**
+     * @deprecated No longer set, the policies are kept in the state under {@link #CURRENT_REQUEST_STATE}
+     */
+    @Deprecated
     public static final String CURRENT_REQUEST_POLICY = "rateLimitRequestPolicy";
-    public static final String RATE_LIMIT_EXCEEDED = "rateLimitExceeded";
+    /**
+     * @deprecated No longer set
+     */
+    @Deprecated
     public static final String ALREADY_LIMITED = "rateLimitAlreadyDone";
 
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012-2018 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Set;
+
+/**
+ * Identity of the client of a request, kept as a request attribute. Each part is resolved through the
+ * {@link RateLimitUtils} the first time it is needed and then reused by every matcher, key and event of the request.
+ * The identity is only reused for the request object it was created for: a wrapper of the request, e.g. the one
+ * Spring Security exposes the authenticated user through, gets its own identity.
+ */
+public final class RequestIdentity {
+
+    private static final String ATTRIBUTE = RequestIdentity.class.getName();
+
+    private final HttpServletRequest request;
+    private final RateLimitUtils rateLimitUtils;
+    private ClientAddress clientAddress;
+    private String user;
+    private Set<String> userRoles;
+    private String method;
+    private String lowerCaseRequestUri;
+
+    private RequestIdentity(HttpServletRequest request, RateLimitUtils rateLimitUtils) {
+        this.request = request;
+        this.rateLimitUtils = rateLimitUtils;
+    }
+
+    public static RequestIdentity of(final HttpServletRequest request, final RateLimitUtils rateLimitUtils) {
+        final Object cached = request.getAttribute(ATTRIBUTE);
+        if (cached instanceof RequestIdentity && ((RequestIdentity) cached).request == request) {
+            return (RequestIdentity) cached;
+        }
+        final RequestIdentity identity = new RequestIdentity(request, rateLimitUtils);
+        request.setAttribute(ATTRIBUTE, identity);
+        return identity;
+    }
+
+    public ClientAddress getClientAddress() {
+        if (clientAddress == null) {
+            clientAddress = new ClientAddress(rateLimitUtils.getRemoteAddress(request));
+        }
+        return clientAddress;
+    }
+
+    public String getRemoteAddress() {
+        return getClientAddress().getValue();
+    }
+
+    public String getUser() {
+        if (user == null) {
+            user = rateLimitUtils.getUser(request);
+        }
+        return user;
+    }
+
+    public Set<String> getUserRoles() {
+        if (userRoles == null) {
+            userRoles = rateLimitUtils.getUserRoles();
+        }
+        return userRoles;
+    }
+
+    public String getMethod() {
+        if (method == null) {
+            method = request.getMethod();
+        }
+        return method;
+    }
+
+    public String getLowerCaseRequestUri() {
+        if (lowerCaseRequestUri == null) {
+            lowerCaseRequestUri = request.getRequestURI().toLowerCase();
+        }
+        return lowerCaseRequestUri;
+    }
+}
@@ -1,7 +1,124 @@
-local current = redis.call('incrby', KEYS[1], ARGV[1])
+-- KEYS: the limit and quota counters of every policy, in evaluation order
+-- ARGV[1]: 1 to stop after the first policy exceeding a counter, 0 to consume all of them
+-- ARGV[2]: 1 when the policy carried over from a previous call already exceeded a counter
+-- ARGV per key: algorithm (fixed, sliding or gcra), usage (0 to only read the counter), window (milliseconds), maximum,
+--               1 when it is the last counter of its policy
+-- Returns the current value and the remaining time to live (milliseconds) of every evaluated key
+local stop = tonumber(ARGV[1]) == 1
+local exceeded = tonumber(ARGV[2]) == 1
+local result = {}
 
-if tonumber(current) == tonumber(ARGV[1]) then
-  redis.call('expire', KEYS[1], ARGV[2])
+-- the gcra and sliding counters read the server clock, so the script must be replicated by its effects
+if redis.replicate_commands then
+  redis.replicate_commands()
 end
 
-return current
\ No newline at end of file
+local function fixedWindow(key, usage, window)
+  local current
+  local ttl
+
+  if usage == 0 then
+    -- a peek only reads the counter, a missing one is not created
+    current = tonumber(redis.call('get', key) or '0')
+    ttl = redis.call('pttl', key)
+    if ttl < 0 then
+      ttl = window
+    end
+  else
+    current = redis.call('incrby', key, usage)
+    ttl = redis.call('pttl', key)
+    if ttl < 0 then
+      redis.call('pexpire', key, window)
+      ttl = window
+    end
+  end
+
+  return current, ttl
+end
+
+-- the key is a hash holding the count of the current and the previous window, fields are the window numbers since
+-- the epoch; the previous count is weighted by the part of its window still covered by the interval ending now
+local function slidingWindow(key, usage, window)
+  local time = redis.call('time')
+  local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+  local index = math.floor(now / window)
+  local left = (index + 1) * window - now
+  local current
+
+  if usage == 0 then
+    current = tonumber(redis.call('hget', key, index) or '0')
+  else
+    current = redis.call('hincrby', key, index, usage)
+    if current == usage then
+      for _, field in ipairs(redis.call('hkeys', key)) do
+        if tonumber(field) < index - 1 then
+          redis.call('hdel', key, field)
+        end
+      end
+    end
+    redis.call('pexpire', key, left + window)
+  end
+
+  local previous = tonumber(redis.call('hget', key, index - 1) or '0')
+  return current + math.floor(previous * left / window), left
+end
+
+-- the key holds the theoretical arrival time (microseconds) of the next unit, the usage is accepted as long as it
+-- does not move that time further than a whole window ahead of now
+local function gcra(key, usage, window, maximum)
+  local time = redis.call('time')
+  local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+  local period = window * 1000
+  local interval = period / maximum
+  local tat = tonumber(redis.call('get', key))
+
+  if not tat or tat < now then
+    tat = now
+  end
+
+  local arrival = tat + usage * interval
+  local remaining = math.floor((period - (arrival - now)) / interval)
+
+  if usage > 0 and (remaining >= 0 or not stop) then
+    redis.call('set', key, string.format('%.0f', arrival), 'px', math.ceil((arrival - now) / 1000))
+  end
+
+  local ttl
+  if remaining < 0 then
+    ttl = math.ceil((arrival - period - now) / 1000)
+  else
+    ttl = math.ceil((arrival - now) / 1000)
+  end
+
+  return maximum - remaining, ttl
+end
+
+for i = 1, #KEYS do
+  local arg = 3 + (i - 1) * 5
+  local usage = tonumber(ARGV[arg + 1])
+  local window = tonumber(ARGV[arg + 2])
+  local maximum = tonumber(ARGV[arg + 3])
+  local current
+  local ttl
+
+  if ARGV[arg] == 'gcra' then
+    current, ttl = gcra(KEYS[i], usage, window, maximum)
+  elseif ARGV[arg] == 'sliding' then
+    current, ttl = slidingWindow(KEYS[i], usage, window)
+  else
+    current, ttl = fixedWindow(KEYS[i], usage, window)
+  end
+
+  result[i * 2 - 1] = current
+  result[i * 2] = ttl
+  exceeded = exceeded or current > maximum
+
+  if ARGV[arg + 4] == '1' then
+    if stop and exceeded then
+      return result
+    end
+    exceeded = false
+  end
+end
+
+return result
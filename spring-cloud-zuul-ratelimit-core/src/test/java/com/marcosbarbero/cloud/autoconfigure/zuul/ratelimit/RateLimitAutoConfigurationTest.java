@@ -12,13 +12,19 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtil
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BatchingRedisRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BlockedKeys;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.ConsulRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.InMemoryRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.ReactiveRedisRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RedisRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jHazelcastRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jIgniteRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jInfinispanRateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.bucket4j.Bucket4jJCacheRateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.RateLimitEarlyRejectFilter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DefaultRateLimitKeyGenerator;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DenyListFile;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.StringToMatchTypeConverter;
 import com.netflix.zuul.ZuulFilter;
 import io.github.bucket4j.grid.GridBucketState;
@@ -34,6 +40,7 @@ import org.springframework.boot.test.context.runner.ApplicationContextRunner;
 import org.springframework.cloud.netflix.zuul.filters.RouteLocator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 
 /**
@@ -81,6 +88,72 @@ public class RateLimitAutoConfigurationTest {
                 .run(context -> assertThat(context).getBean(RateLimiter.class).isExactlyInstanceOf(RedisRateLimiter.class));
     }
 
+    @Test
+    public void testDenyListFileByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=IN_MEMORY", PREFIX + ".deny-request.file=target/deny-list")
+                .run(context -> assertThat(context).hasSingleBean(DenyListFile.class));
+    }
+
+    @Test
+    public void testDenyListFileInvalidCheckInterval() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=IN_MEMORY", PREFIX + ".deny-request.file=target/deny-list",
+                PREFIX + ".deny-request.file-check-interval=0s")
+                .run(context -> assertThat(context).hasFailed().getFailure()
+                        .hasStackTraceContaining("fileCheckInterval"));
+    }
+
+    @Test
+    public void testEarlyRejectByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=IN_MEMORY", PREFIX + ".early-reject=true")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(RateLimitEarlyRejectFilter.class);
+                    assertThat(context).hasSingleBean(BlockedKeys.class);
+                });
+    }
+
+    @Test
+    public void testBlockedKeysByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=IN_MEMORY", PREFIX + ".blocked-keys-cache-size=1000")
+                .run(context -> assertThat(context).hasSingleBean(BlockedKeys.class));
+    }
+
+    @Test
+    public void testEarlyRejectSharesBlockedKeys() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=IN_MEMORY", PREFIX + ".early-reject=true",
+                PREFIX + ".blocked-keys-cache-size=1000")
+                .run(context -> {
+                    assertThat(context).hasSingleBean(RateLimitEarlyRejectFilter.class);
+                    assertThat(context).hasSingleBean(BlockedKeys.class);
+                });
+    }
+
+    @Test
+    public void testNoEarlyReject() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=IN_MEMORY")
+                .run(context -> {
+                    assertThat(context).doesNotHaveBean(RateLimitEarlyRejectFilter.class);
+                    assertThat(context).doesNotHaveBean(BlockedKeys.class);
+                });
+    }
+
+    @Test
+    public void testNoDenyListFile() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=IN_MEMORY")
+                .run(context -> assertThat(context).doesNotHaveBean(DenyListFile.class));
+    }
+
+    @Test
+    public void testBatchingRedisRateLimiterByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=REDIS", PREFIX + ".redis.batch-window=200us")
+                .run(context -> assertThat(context).getBean(RateLimiter.class).isExactlyInstanceOf(BatchingRedisRateLimiter.class));
+    }
+
+    @Test
+    public void testReactiveRedisRateLimiterByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=REDIS", PREFIX + ".redis.async=true")
+                .run(context -> assertThat(context).getBean(RateLimiter.class).isExactlyInstanceOf(ReactiveRedisRateLimiter.class));
+    }
+
     @Test
     public void testBucket4jJCacheRateLimiterByProperty() {
         contextRunner.withPropertyValues(PREFIX + ".repository=BUCKET4J_JCACHE")
@@ -105,6 +178,12 @@ public class RateLimitAutoConfigurationTest {
                 .run(context -> assertThat(context).getBean(RateLimiter.class).isExactlyInstanceOf(Bucket4jInfinispanRateLimiter.class));
     }
 
+    @Test
+    public void testInMemoryRateLimiterByProperty() {
+        contextRunner.withPropertyValues(PREFIX + ".repository=IN_MEMORY")
+                .run(context -> assertThat(context).getBean(RateLimiter.class).isExactlyInstanceOf(InMemoryRateLimiter.class));
+    }
+
     @Test
     public void testDefaultRateLimitKeyGenerator() {
         contextRunner.withPropertyValues(PREFIX + ".repository=BUCKET4J_JCACHE")
@@ -156,6 +235,11 @@ public class RateLimitAutoConfigurationTest {
             return mock(RedisConnectionFactory.class);
         }
 
+        @Bean
+        public ReactiveRedisConnectionFactory reactiveRedisConnectionFactory() {
+            return mock(ReactiveRedisConnectionFactory.class);
+        }
+
         @Bean
         @Qualifier("RateLimit")
         @SuppressWarnings("unchecked")
@@ -10,8 +10,13 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.Ra
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitType;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DefaultRateLimitKeyGenerator;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DefaultRateLimitUtils;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
 import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
@@ -195,4 +200,84 @@ public class DefaultRateLimitKeyGeneratorTest {
         String key = target.key(httpServletRequest, route, policy);
         assertThat(key).isEqualTo("key-prefix:id:customValue:customHeader");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testKeyOriginHashTag() {
+        Policy policy = new Policy();
+        policy.getType().add(new MatchType(RateLimitType.ORIGIN, null));
+        properties.getRedis().setHashTag(true);
+
+        String key = target.key(httpServletRequest, route, policy);
+        assertThat(key).isEqualTo("key-prefix:id:{remote}");
+    }
+
+    @Test
+    public void testKeyEmptyTypesHashTag() {
+        Policy policy = new Policy();
+        properties.getRedis().setHashTag(true);
+
+        assertThat(target.key(httpServletRequest, route, policy)).isEqualTo("key-prefix:{id}");
+        assertThat(target.key(httpServletRequest, null, policy)).isEqualTo("{key-prefix}");
+    }
+
+    @Test
+    public void testKeyCompact() {
+        Policy policy = new Policy();
+        String headerName = "customHeader";
+        policy.getType().add(new MatchType(RateLimitType.HTTP_HEADER, headerName));
+        when(httpServletRequest.getHeader(headerName)).thenReturn(StringUtils.repeat("customValue", 100));
+        properties.setCompactKeys(true);
+
+        String key = target.key(httpServletRequest, route, policy);
+        assertThat(key).startsWith("key-prefix:id:").hasSize("key-prefix:id:".length() + 22);
+        assertThat(target.key(httpServletRequest, route, policy)).isEqualTo(key);
+
+        when(httpServletRequest.getHeader(headerName)).thenReturn("otherValue");
+        assertThat(target.key(httpServletRequest, route, policy)).isNotEqualTo(key)
+                .hasSize("key-prefix:id:".length() + 22);
+    }
+
+    @Test
+    public void testKeyCompactHashTag() {
+        Policy policy = new Policy();
+        policy.getType().add(new MatchType(RateLimitType.ORIGIN, null));
+        properties.setCompactKeys(true);
+        properties.getRedis().setHashTag(true);
+
+        String key = target.key(httpServletRequest, route, policy);
+        assertThat(key).matches("key-prefix:id:\\{[A-Za-z0-9_-]{22}}");
+    }
+
+    @Test
+    public void testKeyCompactTruncatedSha256() throws Exception {
+        Policy policy = new Policy();
+        policy.getType().add(new MatchType(RateLimitType.ORIGIN, null));
+        properties.setCompactKeys(true);
+
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest("remote".getBytes(StandardCharsets.UTF_8));
+        String hash = Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16));
+        assertThat(target.key(httpServletRequest, route, policy)).isEqualTo("key-prefix:id:" + hash);
+    }
+
+    @Test
+    public void testKeyCompactPolicyOverride() {
+        Policy policy = new Policy();
+        policy.getType().add(new MatchType(RateLimitType.ORIGIN, null));
+        policy.setCompactKeys(true);
+
+        assertThat(target.key(httpServletRequest, route, policy)).matches("key-prefix:id:[A-Za-z0-9_-]{22}");
+
+        properties.setCompactKeys(true);
+        target.onRefresh(null);
+        policy.setCompactKeys(false);
+        assertThat(target.key(httpServletRequest, route, policy)).isEqualTo("key-prefix:id:remote");
+    }
+
+    @Test
+    public void testKeyCompactEmptyTypes() {
+        Policy policy = new Policy();
+        properties.setCompactKeys(true);
+
+        assertThat(target.key(httpServletRequest, route, policy)).isEqualTo("key-prefix:id");
+    }
+}
@@ -51,7 +51,7 @@ public class AbstractRateLimiterTest {
         doThrow(new RuntimeException()).when(target).saveRate(any());
         Policy policy = new Policy();
         policy.setLimit(100L);
-        target.consume(policy, "key", 0L);
+        target.consume(policy, "key", null);
         verify(rateLimiterErrorHandler).handleSaveError(matches("key"), any());
     }
 }
\ No newline at end of file
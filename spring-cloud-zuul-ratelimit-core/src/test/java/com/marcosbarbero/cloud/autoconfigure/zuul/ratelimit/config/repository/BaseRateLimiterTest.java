@@ -46,7 +46,9 @@ public abstract class BaseRateLimiterTest {
         assertThat(rate.getRemainingQuota()).isEqualTo(1000L);
 
         rate = target.consume(policy, "key", 800L);
-        assertThat(rate.getRemaining()).isEqualTo(9L);
         assertThat(rate.getRemainingQuota()).isEqualTo(200L);
+
+        rate = target.consume(policy, "key", null);
+        assertThat(rate.getRemaining()).isEqualTo(8L);
     }
 }
\ No newline at end of file
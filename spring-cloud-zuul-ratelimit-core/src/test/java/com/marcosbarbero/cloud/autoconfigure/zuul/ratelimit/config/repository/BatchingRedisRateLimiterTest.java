@@ -0,0 +1,203 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.Invocation;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.matches;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class BatchingRedisRateLimiterTest {
+
+    @Mock
+    private RateLimiterErrorHandler rateLimiterErrorHandler;
+    @Mock
+    private StringRedisTemplate redisTemplate;
+
+    private BatchingRedisRateLimiter target;
+    private final AtomicInteger pipelines = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        this.target = new BatchingRedisRateLimiter(this.rateLimiterErrorHandler, this.redisTemplate, 1,
+                Duration.ofMillis(50), 4, Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        target.close();
+    }
+
+    @Test
+    public void testConsumeConcurrentRequestsInOnePipeline() {
+        doAnswer(invocation -> {
+            pipelines.incrementAndGet();
+            List<Object> replies = new ArrayList<>();
+            RedisConnection connection = mock(RedisConnection.class, eval -> {
+                byte[][] keysAndArgs = (byte[][]) ((Invocation) eval).getRawArguments()[3];
+                String key = new String(keysAndArgs[0], StandardCharsets.UTF_8);
+                replies.add(asList(Long.parseLong(key.substring(3)), 1000L));
+                return null;
+            });
+            ((RedisCallback<?>) invocation.getArgument(0)).doInRedis(connection);
+            return replies;
+        }).when(redisTemplate).executePipelined(any(RedisCallback.class));
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        List<CompletableFuture<Rate>> rates = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            String key = "key" + i;
+            rates.add(CompletableFuture.supplyAsync(() -> target.consume(policy, key, null)));
+        }
+
+        for (int i = 1; i <= 4; i++) {
+            Rate rate = rates.get(i - 1).join();
+            assertThat(rate.getKey()).isEqualTo("key" + i);
+            assertThat(rate.getRemaining()).isEqualTo(10L - i);
+            assertThat(rate.getReset()).isEqualTo(1000L);
+        }
+        assertThat(pipelines.get()).isLessThan(4);
+    }
+
+    @Test
+    public void testConsumeReloadsScript() {
+        doThrow(new InvalidDataAccessApiUsageException("NOSCRIPT No matching script"))
+                .doReturn(asList(asList(2L, 500L)))
+                .when(redisTemplate).executePipelined(any(RedisCallback.class));
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        Rate rate = target.consume(policy, "key", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(8L);
+        assertThat(rate.getReset()).isEqualTo(500L);
+        verify(redisTemplate, times(2)).executePipelined(any(RedisCallback.class));
+    }
+
+    @Test
+    public void testConsumeException() {
+        doThrow(new RuntimeException()).when(redisTemplate).executePipelined(any(RedisCallback.class));
+
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+        Rate rate = target.consume(policy, "key", null);
+
+        verify(rateLimiterErrorHandler).handleError(matches(".* key, .*"), any());
+        assertThat(rate.getRemaining()).isEqualTo(100L);
+        assertThat(rate.getReset()).isEqualTo(policy.getRefreshInterval().toMillis());
+    }
+
+    @Test
+    public void testConsumeUnexpectedReplyKeepsSender() {
+        doReturn(asList(asList("unexpected", 1000L)))
+                .doReturn(asList(asList(1L, 1000L)))
+                .when(redisTemplate).executePipelined(any(RedisCallback.class));
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(10L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(9L);
+        verify(rateLimiterErrorHandler).handleError(any(), any(ClassCastException.class));
+        verify(redisTemplate, times(0)).execute(any(), anyList(), any());
+    }
+
+    @Test
+    public void testConsumeErrorHandlerExceptionKeepsSender() {
+        doThrow(new RuntimeException())
+                .doReturn(asList(asList(1L, 1000L)))
+                .when(redisTemplate).executePipelined(any(RedisCallback.class));
+        doThrow(new IllegalStateException()).doNothing().when(rateLimiterErrorHandler).handleError(any(), any());
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        assertThatThrownBy(() -> target.consume(policy, "key", null)).isInstanceOf(IllegalStateException.class);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(9L);
+        verify(redisTemplate, times(0)).execute(any(), anyList(), any());
+    }
+
+    @Test
+    public void testConsumeTimeoutWaitsForSentCall() {
+        target.close();
+        target = new BatchingRedisRateLimiter(this.rateLimiterErrorHandler, this.redisTemplate, 1,
+                Duration.ofMillis(50), 4, Duration.ofMillis(200));
+        doAnswer(invocation -> {
+            Thread.sleep(1000);
+            return asList(asList(1L, 1000L));
+        }).when(redisTemplate).executePipelined(any(RedisCallback.class));
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        Rate rate = target.consume(policy, "key", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(9L);
+        verify(redisTemplate, times(0)).execute(any(), anyList(), any());
+    }
+
+    @Test
+    public void testConsumeTimeoutMakesUnsentCall() throws InterruptedException {
+        target.close();
+        target = new BatchingRedisRateLimiter(this.rateLimiterErrorHandler, this.redisTemplate, 1,
+                Duration.ofMillis(50), 1, Duration.ofMillis(200));
+        CountDownLatch sending = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            sending.countDown();
+            Thread.sleep(1000);
+            return asList(asList(1L, 1000L));
+        }).when(redisTemplate).executePipelined(any(RedisCallback.class));
+        doReturn(asList(3L, 800L)).when(redisTemplate).execute(any(), anyList(), any());
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        CompletableFuture<Rate> first = CompletableFuture.supplyAsync(() -> target.consume(policy, "key1", null));
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+        long start = System.nanoTime();
+        Rate rate = target.consume(policy, "key2", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(7L);
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(800));
+        assertThat(first.join().getRemaining()).isEqualTo(9L);
+        verify(redisTemplate, times(1)).executePipelined(any(RedisCallback.class));
+        verify(redisTemplate, times(1)).execute(any(), anyList(), any());
+    }
+
+    @Test
+    public void testConsumeClosed() {
+        doReturn(asList(3L, 800L)).when(redisTemplate).execute(any(), anyList(), any());
+        target.close();
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(7L);
+        verify(redisTemplate, times(0)).executePipelined(any(RedisCallback.class));
+    }
+}
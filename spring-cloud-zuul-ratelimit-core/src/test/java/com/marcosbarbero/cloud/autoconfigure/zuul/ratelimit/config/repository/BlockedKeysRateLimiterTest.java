@@ -0,0 +1,108 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.Lists;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class BlockedKeysRateLimiterTest extends BaseRateLimiterTest {
+
+    private RateLimiter delegate;
+    private BlockedKeys blockedKeys;
+
+    @BeforeEach
+    public void setUp() {
+        delegate = spy(new InMemoryRateLimiter(100));
+        blockedKeys = new BlockedKeys(10);
+        target = new BlockedKeysRateLimiter(delegate, blockedKeys);
+    }
+
+    @Test
+    public void testConsumeBlockedKey() {
+        Policy policy = new Policy();
+        policy.setLimit(1L);
+        policy.setRefreshInterval(Duration.ofSeconds(60));
+
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(0L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(-1L);
+        Rate rate = target.consume(policy, "key", null);
+        assertThat(rate.getRemaining()).isEqualTo(-1L);
+        assertThat(rate.getReset()).isBetween(1L, 60_000L);
+
+        verify(delegate, times(2)).consume(policy, "key", null);
+        assertThat(target.consume(policy, "other", null).getRemaining()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testConsumeBlockedKeyExpires() throws Exception {
+        Policy policy = new Policy();
+        policy.setLimit(1L);
+        policy.setRefreshInterval(Duration.ofMillis(100));
+
+        target.consume(policy, "key", null);
+        target.consume(policy, "key", null);
+        assertThat(blockedKeys.size()).isEqualTo(1);
+
+        Thread.sleep(150);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(0L);
+        assertThat(blockedKeys.size()).isZero();
+    }
+
+    @Test
+    public void testConsumePoliciesStopsAtBlockedKey() {
+        RateLimiter remote = mock(RateLimiter.class);
+        target = new BlockedKeysRateLimiter(remote, blockedKeys);
+        Policy first = new Policy();
+        first.setLimit(10L);
+        Policy second = new Policy();
+        second.setLimit(1L);
+        Policy third = new Policy();
+        third.setLimit(10L);
+        blockedKeys.block("second", new Rate("second", -1L, null, 60_000L, null));
+        Rate firstRate = new Rate("first", 9L, null, 60_000L, null);
+        when(remote.consume(anyList(), anyList(), any())).thenReturn(Lists.newArrayList(firstRate));
+
+        List<Rate> rates = target.consume(Lists.newArrayList(first, second, third),
+                Lists.newArrayList("first", "second", "third"), null);
+
+        assertThat(rates).hasSize(2);
+        assertThat(rates.get(0)).isSameAs(firstRate);
+        assertThat(rates.get(1).getRemaining()).isEqualTo(-1L);
+        verify(remote).consume(eq(Collections.singletonList(first)), eq(Collections.singletonList("first")), eq(null));
+    }
+
+    @Test
+    public void testConsumePoliciesSkipsBlockedKeyRequestTime() {
+        RateLimiter remote = mock(RateLimiter.class);
+        target = new BlockedKeysRateLimiter(remote, blockedKeys);
+        Policy first = new Policy();
+        first.setQuota(Duration.ofSeconds(1));
+        Policy second = new Policy();
+        second.setQuota(Duration.ofSeconds(1));
+        blockedKeys.block("first", new Rate("first", null, -1L, 60_000L, null));
+        Rate secondRate = new Rate("second", null, 500L, 60_000L, null);
+        when(remote.consume(anyList(), anyList(), any())).thenReturn(Lists.newArrayList(secondRate));
+
+        List<Rate> rates = target.consume(Lists.newArrayList(first, second), Lists.newArrayList("first", "second"), 10L);
+
+        assertThat(rates).hasSize(2);
+        assertThat(rates.get(0).getRemainingQuota()).isEqualTo(-1L);
+        assertThat(rates.get(1)).isSameAs(secondRate);
+        verify(remote).consume(eq(Collections.singletonList(second)), eq(Collections.singletonList("second")), eq(10L));
+    }
+}
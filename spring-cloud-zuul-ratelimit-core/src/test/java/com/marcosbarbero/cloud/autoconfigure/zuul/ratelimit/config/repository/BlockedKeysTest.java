@@ -0,0 +1,61 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BlockedKeysTest {
+
+    private final BlockedKeys blockedKeys = new BlockedKeys(2);
+
+    @Test
+    public void testBlockRequest() {
+        String key = BlockedKeys.requestKey("GET", "10.0.0.1", "/servicea/test");
+        assertThat(blockedKeys.remaining(key)).isZero();
+
+        blockedKeys.block(key, 60_000L);
+        assertThat(blockedKeys.remaining(key)).isBetween(59_000L, 60_000L);
+        assertThat(blockedKeys.remaining(BlockedKeys.requestKey("POST", "10.0.0.1", "/servicea/test"))).isZero();
+    }
+
+    @Test
+    public void testBlockRate() {
+        blockedKeys.block("key", new Rate("key", -1L, 10L, 60_000L, null));
+
+        Rate rate = blockedKeys.get("key");
+        assertThat(rate.getKey()).isEqualTo("key");
+        assertThat(rate.getRemaining()).isEqualTo(-1L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(10L);
+        assertThat(rate.getReset()).isBetween(59_000L, 60_000L);
+        assertThat(blockedKeys.get("other")).isNull();
+    }
+
+    @Test
+    public void testBlockExpires() throws InterruptedException {
+        String key = BlockedKeys.requestKey("GET", "10.0.0.1", "/servicea/test");
+        blockedKeys.block(key, 1L);
+        blockedKeys.block("other", 0L);
+        blockedKeys.block("rate", new Rate("rate", -1L, null, null, null));
+        Thread.sleep(5);
+
+        assertThat(blockedKeys.remaining(key)).isZero();
+        assertThat(blockedKeys.size()).isZero();
+    }
+
+    @Test
+    public void testBlockFull() throws InterruptedException {
+        blockedKeys.block("expired", 1L);
+        blockedKeys.block("first", 60_000L);
+        Thread.sleep(5);
+
+        blockedKeys.block("second", 60_000L);
+        assertThat(blockedKeys.remaining("first")).isPositive();
+        assertThat(blockedKeys.size()).isEqualTo(2);
+
+        blockedKeys.block("third", 60_000L);
+        assertThat(blockedKeys.remaining("first")).isZero();
+        assertThat(blockedKeys.remaining("third")).isPositive();
+        assertThat(blockedKeys.size()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,85 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitAlgorithm;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class InMemoryRateLimiterTest extends BaseRateLimiterTest {
+
+    @BeforeEach
+    public void setUp() {
+        target = new InMemoryRateLimiter(3);
+    }
+
+    @Test
+    public void testConsumeExpiredWindow() throws Exception {
+        Policy policy = new Policy();
+        policy.setLimit(1L);
+        policy.setRefreshInterval(Duration.ofSeconds(1));
+
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(0L);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(-1L);
+
+        TimeUnit.MILLISECONDS.sleep(1100);
+
+        Rate rate = target.consume(policy, "key", null);
+        assertThat(rate.getRemaining()).isEqualTo(0L);
+        assertThat(rate.getReset()).isEqualTo(1000L);
+    }
+
+    @Test
+    public void testConsumeBoundedSize() {
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(target.consume(policy, "key" + i, null).getRemaining()).isEqualTo(9L);
+        }
+        assertThat(((InMemoryRateLimiter) target).size()).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    public void testConsumeFullKeepsLiveWindows() throws Exception {
+        Policy policy = new Policy();
+        policy.setLimit(1L);
+        policy.setRefreshInterval(Duration.ofSeconds(1));
+
+        target.consume(policy, "key", null);
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(-1L);
+        for (int i = 0; i < 10; i++) {
+            assertThat(target.consume(policy, "key" + i, null).getRemaining()).isEqualTo(0L);
+        }
+        assertThat(target.consume(policy, "key", null).getRemaining()).isEqualTo(-1L);
+        assertThat(((InMemoryRateLimiter) target).size()).isEqualTo(3);
+
+        TimeUnit.MILLISECONDS.sleep(1100);
+
+        assertThat(target.consume(policy, "other", null).getRemaining()).isEqualTo(0L);
+        assertThat(target.consume(policy, "other", null).getRemaining()).isEqualTo(-1L);
+        assertThat(((InMemoryRateLimiter) target).size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testConsumeSlidingWindow() throws Exception {
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        policy.setRefreshInterval(Duration.ofSeconds(1));
+        policy.setAlgorithm(RateLimitAlgorithm.SLIDING_WINDOW);
+
+        TimeUnit.MILLISECONDS.sleep(1100 - System.currentTimeMillis() % 1000);
+        for (int i = 0; i < 10; i++) {
+            target.consume(policy, "key", null);
+        }
+
+        TimeUnit.SECONDS.sleep(1);
+
+        Rate rate = target.consume(policy, "key", null);
+        assertThat(rate.getRemaining()).isBetween(0L, 4L);
+    }
+}
@@ -0,0 +1,100 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.matches;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings("unchecked")
+public class ReactiveRedisRateLimiterTest {
+
+    @Mock
+    private RateLimiterErrorHandler rateLimiterErrorHandler;
+    @Mock
+    private StringRedisTemplate redisTemplate;
+    @Mock
+    private ReactiveStringRedisTemplate reactiveRedisTemplate;
+
+    private ReactiveRedisRateLimiter target;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        this.target = new ReactiveRedisRateLimiter(this.rateLimiterErrorHandler, this.redisTemplate,
+                this.reactiveRedisTemplate, 1, Duration.ofSeconds(10));
+    }
+
+    @Test
+    public void testConsume() {
+        doReturn(Flux.just(asList(1L, 1000L, 800L, 1000L)))
+                .when(reactiveRedisTemplate).execute(any(RedisScript.class), anyList(), anyList());
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        policy.setQuota(Duration.ofSeconds(1));
+        Rate rate = target.consume(policy, "key", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(9L);
+        assertThat(rate.getRemainingQuota()).isEqualTo(200L);
+        assertThat(rate.getReset()).isEqualTo(1000L);
+    }
+
+    @Test
+    public void testConsumeElementByElement() {
+        doReturn(Flux.just(3L, 500L))
+                .when(reactiveRedisTemplate).execute(any(RedisScript.class), anyList(), anyList());
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        Rate rate = target.consume(policy, "key", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(7L);
+        assertThat(rate.getReset()).isEqualTo(500L);
+    }
+
+    @Test
+    public void testConsumeError() {
+        doReturn(Flux.error(new RuntimeException()))
+                .when(reactiveRedisTemplate).execute(any(RedisScript.class), anyList(), anyList());
+
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+        Rate rate = target.consume(policy, "key", null);
+
+        verify(rateLimiterErrorHandler).handleError(matches(".* key, .*"), any());
+        assertThat(rate.getRemaining()).isEqualTo(100L);
+        assertThat(rate.getReset()).isEqualTo(policy.getRefreshInterval().toMillis());
+    }
+
+    @Test
+    public void testConsumeTimeout() {
+        target = new ReactiveRedisRateLimiter(this.rateLimiterErrorHandler, this.redisTemplate,
+                this.reactiveRedisTemplate, 1, Duration.ofMillis(200));
+        doReturn(Flux.never())
+                .when(reactiveRedisTemplate).execute(any(RedisScript.class), anyList(), anyList());
+
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+        Rate rate = target.consume(policy, "key", null);
+
+        verify(rateLimiterErrorHandler).handleError(matches(".* key, .*"), any());
+        assertThat(rate.getRemaining()).isEqualTo(100L);
+        assertThat(rate.getReset()).isEqualTo(policy.getRefreshInterval().toMillis());
+    }
+}
@@ -1,7 +1,11 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository;
 
 import com.google.common.collect.Maps;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitAlgorithm;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy.MatchType;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitType;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
@@ -13,8 +17,12 @@ import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -29,8 +37,8 @@ public class RedisRateLimiterTest extends BaseRateLimiterTest {
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.initMocks(this);
-        doReturn(1L, 2L)
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
+        doReturn(asList(1L, 1000L), asList(2L, 900L))
+                .when(redisTemplate).execute(any(), anyList(), any());
 
         this.target = new RedisRateLimiter(this.rateLimiterErrorHandler, this.redisTemplate);
     }
@@ -49,17 +57,18 @@ public class RedisRateLimiterTest extends BaseRateLimiterTest {
 
     @Test
     public void testConsumeRemainingLimitException() {
-        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
+        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), any());
 
         Policy policy = new Policy();
         policy.setLimit(100L);
-        target.consume(policy, "key", 0L);
+        Rate rate = target.consume(policy, "key", null);
         verify(rateLimiterErrorHandler).handleError(matches(".* key, .*"), any());
+        assertThat(rate.getReset()).isEqualTo(policy.getRefreshInterval().toMillis());
     }
 
     @Test
     public void testConsumeRemainingQuotaLimitException() {
-        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
+        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), any());
 
         Policy policy = new Policy();
         policy.setQuota(Duration.ofSeconds(100));
@@ -69,36 +78,182 @@ public class RedisRateLimiterTest extends BaseRateLimiterTest {
 
     @Test
     public void testConsumeGetExpireException() {
-        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
+        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), any());
 
         Policy policy = new Policy();
         policy.setLimit(100L);
         policy.setQuota(Duration.ofSeconds(50));
-        target.consume(policy, "key", 0L);
+        target.consume(policy, "key", null);
         verify(rateLimiterErrorHandler).handleError(matches(".* key, .*"), any());
         verify(rateLimiterErrorHandler).handleError(matches(".* key-quota, .*"), any());
     }
 
     @Test
     public void testConsumeExpireException() {
-        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
+        doThrow(new RuntimeException()).when(redisTemplate).execute(any(), anyList(), any());
 
         Policy policy = new Policy();
         policy.setLimit(100L);
-        target.consume(policy, "key", 0L);
+        target.consume(policy, "key", null);
         verify(rateLimiterErrorHandler).handleError(matches(".* key, .*"), any());
     }
 
     @Test
     public void testConsumeSetKey() {
-        doReturn(1L, 2L)
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
+        doReturn(asList(1L, 1000L), asList(2L, 900L))
+                .when(redisTemplate).execute(any(), anyList(), any());
 
         Policy policy = new Policy();
         policy.setLimit(20L);
-        target.consume(policy, "key", 0L);
+        target.consume(policy, "key", null);
 
-        verify(redisTemplate).execute(any(), anyList(), anyString(), anyString());
+        verify(redisTemplate).execute(any(), anyList(), any());
         verify(rateLimiterErrorHandler, never()).handleError(any(), any());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConsumePoliciesInOneCall() {
+        doReturn(asList(1L, 800L, 500L, 900L, 1L, 400L))
+                .when(redisTemplate).execute(any(), anyList(), any());
+
+        Policy first = new Policy();
+        first.setLimit(10L);
+        first.setQuota(Duration.ofSeconds(1));
+        Policy second = new Policy();
+        second.setLimit(5L);
+        List<Rate> rates = target.consume(asList(first, second), asList("first", "second"), null);
+
+        verify(redisTemplate).execute(any(), eq(asList("first", "first-quota", "second")), any());
+        assertThat(rates).hasSize(2);
+        assertThat(rates.get(0).getRemaining()).isEqualTo(9L);
+        assertThat(rates.get(0).getRemainingQuota()).isEqualTo(500L);
+        assertThat(rates.get(0).getReset()).isEqualTo(900L);
+        assertThat(rates.get(1).getRemaining()).isEqualTo(4L);
+        assertThat(rates.get(1).getReset()).isEqualTo(400L);
+    }
+
+    @Test
+    public void testConsumePoliciesStopOnExceeded() {
+        doReturn(asList(11L, 300L))
+                .when(redisTemplate).execute(any(), anyList(), any());
+
+        Policy first = new Policy();
+        first.setLimit(10L);
+        Policy second = new Policy();
+        second.setLimit(5L);
+        List<Rate> rates = target.consume(asList(first, second), asList("first", "second"), null);
+
+        assertThat(rates).hasSize(1);
+        assertThat(rates.get(0).getRemaining()).isEqualTo(-1L);
+        assertThat(rates.get(0).getReset()).isEqualTo(300L);
+    }
+
+    @Test
+    public void testConsumeLimitOnlyAfterRequest() {
+        Policy policy = new Policy();
+        policy.setLimit(20L);
+        target.consume(policy, "key", 800L);
+
+        verify(redisTemplate, never()).execute(any(), anyList(), any());
+    }
+
+    @Test
+    public void testConsumeGcra() {
+        doReturn(asList(1L, 200L))
+                .when(redisTemplate).execute(any(), anyList(), any());
+
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        policy.setRefreshInterval(Duration.ofSeconds(2));
+        policy.setAlgorithm(RateLimitAlgorithm.GCRA);
+        Rate rate = target.consume(policy, "key", null);
+
+        verify(redisTemplate).execute(any(), eq(singletonList("key")),
+                eq("1"), eq("0"), eq("gcra"), eq("1"), eq("2000"), eq("10"), eq("1"));
+        assertThat(rate.getRemaining()).isEqualTo(9L);
+        assertThat(rate.getReset()).isEqualTo(200L);
+    }
+
+    @Test
+    public void testConsumeSlidingWindow() {
+        Policy policy = new Policy();
+        policy.setQuota(Duration.ofSeconds(1));
+        policy.setAlgorithm(RateLimitAlgorithm.SLIDING_WINDOW);
+        target.consume(policy, "key", 800L);
+
+        verify(redisTemplate).execute(any(), eq(singletonList("key-quota")),
+                eq("0"), eq("0"), eq("sliding"), eq("800"), eq("60000"), eq("1000"), eq("1"));
+    }
+
+    @Test
+    public void testConsumeShardedCounter() {
+        doReturn(asList(1L, 1000L))
+                .when(redisTemplate).execute(any(), anyList(), any());
+        target = new RedisRateLimiter(this.rateLimiterErrorHandler, this.redisTemplate, 4);
+
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+        Rate rate = target.consume(policy, "key", null);
+
+        verify(redisTemplate).execute(any(), argThat((List<String> keys) -> keys.get(0).matches("key:[0-3]")),
+                eq("1"), eq("0"), eq("fixed"), eq("1"), eq("60000"), eq("25"), eq("1"));
+        assertThat(rate.getRemaining()).isEqualTo(96L);
+    }
+
+    @Test
+    public void testConsumeShardedCounterClientPolicy() {
+        target = new RedisRateLimiter(this.rateLimiterErrorHandler, this.redisTemplate, 4);
+
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+        policy.getType().add(new MatchType(RateLimitType.ORIGIN, null));
+        target.consume(policy, "key", null);
+
+        verify(redisTemplate).execute(any(), eq(singletonList("key")),
+                eq("1"), eq("0"), eq("fixed"), eq("1"), eq("60000"), eq("100"), eq("1"));
+    }
+
+    @Test
+    public void testConsumeShardedCounterRemainder() {
+        doReturn(asList(1L, 1000L))
+                .when(redisTemplate).execute(any(), anyList(), any());
+        target = new RedisRateLimiter(this.rateLimiterErrorHandler, this.redisTemplate, 3);
+
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+        Rate rate = target.consume(policy, "key", null);
+
+        verify(redisTemplate).execute(any(), argThat((List<String> keys) -> keys.get(0).matches("key:[0-2]")),
+                eq("1"), eq("0"), eq("fixed"), eq("1"), eq("60000"), matches("3[34]"), eq("1"));
+        assertThat(rate.getRemaining()).isBetween(96L, 97L);
+    }
+
+    @Test
+    public void testConsumeShardsClampedToLimit() {
+        doReturn(asList(1L, 1000L))
+                .when(redisTemplate).execute(any(), anyList(), any());
+        target = new RedisRateLimiter(this.rateLimiterErrorHandler, this.redisTemplate, 4);
+
+        Policy policy = new Policy();
+        policy.setLimit(2L);
+        Rate rate = target.consume(policy, "key", null);
+
+        verify(redisTemplate).execute(any(), argThat((List<String> keys) -> keys.get(0).matches("key:[0-1]")),
+                eq("1"), eq("0"), eq("fixed"), eq("1"), eq("60000"), eq("1"), eq("1"));
+        assertThat(rate.getRemaining()).isEqualTo(0L);
+    }
+
+    @Test
+    public void testShare() {
+        assertThat(RedisRateLimiter.share(100, 3, 0)).isEqualTo(34);
+        assertThat(RedisRateLimiter.share(100, 3, 1)).isEqualTo(33);
+        assertThat(RedisRateLimiter.share(100, 3, 2)).isEqualTo(33);
+        assertThat(RedisRateLimiter.share(100, 4, 3)).isEqualTo(25);
+    }
+
+    @Test
+    public void testShardKey() {
+        assertThat(RedisRateLimiter.shardKey("prefix:route", 3)).isEqualTo("prefix:route:3");
+        assertThat(RedisRateLimiter.shardKey("prefix:{route}", 3)).isEqualTo("prefix:{route:3}");
+    }
+}
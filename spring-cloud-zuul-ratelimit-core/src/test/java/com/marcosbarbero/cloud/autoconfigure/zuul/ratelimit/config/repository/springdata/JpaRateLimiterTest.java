@@ -1,15 +1,28 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.springdata;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.endsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.Maps;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.Rate;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitAlgorithm;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BaseRateLimiterTest;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.RateLimiterErrorHandler;
+import java.time.Duration;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -26,7 +39,9 @@ public class JpaRateLimiterTest extends BaseRateLimiterTest {
         Map<String, Rate> repository = Maps.newHashMap();
         when(rateLimiterRepository.save(any(Rate.class))).thenAnswer(invocationOnMock -> {
             Rate rate = invocationOnMock.getArgument(0);
-            repository.put(rate.getKey(), rate);
+            // only the mapped columns are stored
+            repository.put(rate.getKey(), new Rate(rate.getKey(), rate.getRemaining(), rate.getRemainingQuota(),
+                    rate.getReset(), rate.getExpiration()));
             return rate;
         });
         when(rateLimiterRepository.findById(any())).thenAnswer(invocationOnMock -> {
@@ -36,4 +51,53 @@ public class JpaRateLimiterTest extends BaseRateLimiterTest {
 
         target = new JpaRateLimiter(rateLimiterErrorHandler, rateLimiterRepository);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConsumeConcurrently() throws Exception {
+        Policy policy = new Policy();
+        policy.setLimit(100L);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Callable<Rate> consume = () -> target.consume(policy, "key", null);
+            executor.invokeAll(Collections.nCopies(50, consume));
+        } finally {
+            executor.shutdown();
+        }
+
+        Rate rate = target.consume(policy, "key", null);
+        assertThat(rate.getRemaining()).isEqualTo(49L);
+    }
+
+    @Test
+    public void testConsumeSlidingWindow() throws Exception {
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+        policy.setRefreshInterval(Duration.ofSeconds(1));
+        policy.setAlgorithm(RateLimitAlgorithm.SLIDING_WINDOW);
+
+        TimeUnit.MILLISECONDS.sleep(1100 - System.currentTimeMillis() % 1000);
+        for (int i = 0; i < 10; i++) {
+            target.consume(policy, "key", null);
+        }
+
+        TimeUnit.SECONDS.sleep(1);
+
+        Rate rate = target.consume(policy, "key", null);
+        assertThat(rate.getRemaining()).isBetween(0L, 4L);
+        rate = target.consume(policy, "key", null);
+        assertThat(rate.getRemaining()).isBetween(-1L, 3L);
+    }
+
+    @Test
+    public void testConsumeFixedWindowReadsOneRate() {
+        Policy policy = new Policy();
+        policy.setLimit(10L);
+
+        target.consume(policy, "key", null);
+        Rate rate = target.consume(policy, "key", null);
+
+        assertThat(rate.getRemaining()).isEqualTo(8L);
+        verify(rateLimiterRepository, never()).findById(endsWith(JpaRateLimiter.PREVIOUS_WINDOW_SUFFIX));
+    }
+}
@@ -0,0 +1,80 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
+
+import com.google.common.collect.Lists;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy.MatchType;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitType;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DefaultRateLimitUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.netflix.zuul.filters.Route;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PolicyIndexTest {
+
+    private final Route route = new Route("servicea", "/test", "servicea", "/servicea", null, Collections.emptySet());
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/servicea/test");
+    private RateLimitProperties properties;
+    private RateLimitUtils rateLimitUtils;
+
+    @BeforeEach
+    public void setUp() {
+        properties = new RateLimitProperties();
+        rateLimitUtils = new DefaultRateLimitUtils(properties);
+    }
+
+    @Test
+    public void testMatchNoPolicies() {
+        properties.getPolicyList().put("serviceb", Lists.newArrayList(new Policy()));
+
+        assertThat(index().match(request, route, rateLimitUtils)).isEmpty();
+        assertThat(index().match(request, null, rateLimitUtils)).isEmpty();
+    }
+
+    @Test
+    public void testMatchDefaultPolicies() {
+        Policy policy = new Policy();
+        properties.setDefaultPolicyList(Lists.newArrayList(policy));
+
+        assertThat(index().match(request, route, rateLimitUtils)).containsExactly(policy);
+        assertThat(index().match(request, null, rateLimitUtils)).containsExactly(policy);
+    }
+
+    @Test
+    public void testMatchAllTypes() {
+        Policy matching = policy(false, new MatchType(RateLimitType.URL_PATTERN, "/servicea/**"),
+                new MatchType(RateLimitType.HTTP_METHOD, "get"), new MatchType(RateLimitType.ORIGIN, null));
+        Policy other = policy(false, new MatchType(RateLimitType.HTTP_METHOD, "get"),
+                new MatchType(RateLimitType.URL_PATTERN, "/serviceb/**"));
+        properties.getPolicyList().put("servicea", Lists.newArrayList(matching, other));
+
+        assertThat(index().match(request, route, rateLimitUtils)).containsExactly(matching);
+    }
+
+    @Test
+    public void testMatchBreakOnMatch() {
+        Policy notMatching = policy(true, new MatchType(RateLimitType.HTTP_METHOD, "post"));
+        Policy breaking = policy(true, new MatchType(RateLimitType.HTTP_METHOD, "get"));
+        Policy skipped = policy(false);
+        properties.getPolicyList().put("servicea", Lists.newArrayList(notMatching, breaking, skipped));
+
+        assertThat(index().match(request, route, rateLimitUtils)).containsExactly(breaking);
+    }
+
+    private PolicyIndex index() {
+        return PolicyIndex.compile(properties.getPolicyList(), properties.getDefaultPolicyList());
+    }
+
+    private static Policy policy(boolean breakOnMatch, MatchType... types) {
+        Policy policy = new Policy();
+        policy.setBreakOnMatch(breakOnMatch);
+        policy.getType().addAll(Lists.newArrayList(types));
+        return policy;
+    }
+}
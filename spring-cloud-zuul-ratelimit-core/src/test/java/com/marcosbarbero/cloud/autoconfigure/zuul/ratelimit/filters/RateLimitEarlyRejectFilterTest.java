@@ -0,0 +1,78 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
+
+import com.google.common.collect.Lists;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BlockedKeys;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DefaultRateLimitUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.util.UrlPathHelper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RateLimitEarlyRejectFilterTest {
+
+    private final RateLimitProperties properties = new RateLimitProperties();
+    private final BlockedKeys blockedKeys = new BlockedKeys();
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private final MockFilterChain filterChain = new MockFilterChain();
+    private MockHttpServletRequest request;
+    private RateLimitEarlyRejectFilter target;
+
+    @BeforeEach
+    public void setUp() {
+        properties.setEnabled(true);
+        request = new MockHttpServletRequest("GET", "/servicea/test");
+        request.setRemoteAddr("10.0.0.1");
+        target = new RateLimitEarlyRejectFilter(properties, new UrlPathHelper(), new DefaultRateLimitUtils(properties),
+                blockedKeys, null);
+    }
+
+    @Test
+    public void testPassThrough() throws Exception {
+        target.doFilter(request, response, filterChain);
+
+        assertThat(filterChain.getRequest()).isSameAs(request);
+        assertThat(response.getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    public void testDeniedOrigin() throws Exception {
+        properties.getDenyRequest().setOrigins(Lists.newArrayList("10.0.0.0/8"));
+
+        target.doFilter(request, response, filterChain);
+
+        assertThat(filterChain.getRequest()).isNull();
+        assertThat(response.getStatus()).isEqualTo(403);
+        assertThat(response.getContentType()).isEqualTo(MediaType.APPLICATION_JSON_VALUE);
+        assertThat(response.getContentAsByteArray()).isEqualTo(RejectionResponse.body(HttpStatus.FORBIDDEN));
+    }
+
+    @Test
+    public void testBlockedRequest() throws Exception {
+        blockedKeys.block(BlockedKeys.requestKey("GET", "10.0.0.1", "/servicea/test"), 1500L);
+
+        target.doFilter(request, response, filterChain);
+
+        assertThat(filterChain.getRequest()).isNull();
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+        assertThat(response.getContentAsString()).isEqualTo("{\"status\":429,\"error\":\"Too Many Requests\"}");
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        properties.setEnabled(false);
+        properties.getDenyRequest().setOrigins(Lists.newArrayList("10.0.0.0/8"));
+
+        target.doFilter(request, response, filterChain);
+
+        assertThat(filterChain.getRequest()).isSameAs(request);
+    }
+}
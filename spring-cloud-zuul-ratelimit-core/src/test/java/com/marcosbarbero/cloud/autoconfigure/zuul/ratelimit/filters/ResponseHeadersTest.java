@@ -0,0 +1,56 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_LIMIT;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_RESET;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResponseHeadersTest {
+
+    @Test
+    public void testSanitize() {
+        assertThat(ResponseHeaders.sanitize("rate-limit-application:serviceA:10.0.0.1"))
+                .isEqualTo("rate-limit-application_serviceA_10.0.0.1");
+        assertThat(ResponseHeaders.sanitize("a::b")).isEqualTo("a_b");
+        assertThat(ResponseHeaders.sanitize("a:::b")).isEqualTo("a__b");
+        assertThat(ResponseHeaders.sanitize("a_:__b")).isEqualTo("a__b");
+        String clean = "already-clean.key_1";
+        assertThat(ResponseHeaders.sanitize(clean)).isSameAs(clean);
+    }
+
+    @Test
+    public void testSanitizeSameAsRegex() {
+        char[] alphabet = "aZ09-._:/ {}*é".toCharArray();
+        Random random = new Random(42);
+        for (int n = 0; n < 10_000; n++) {
+            char[] chars = new char[random.nextInt(12)];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String key = new String(chars);
+            assertThat(ResponseHeaders.sanitize(key))
+                    .as(key).isEqualTo(key.replaceAll("[^A-Za-z0-9-.]", "_").replaceAll("__", "_"));
+        }
+    }
+
+    @Test
+    public void testVerboseNamesAreCached() {
+        ResponseHeaders responseHeaders = new ResponseHeaders();
+        String[] names = responseHeaders.verbose("prefix:serviceA");
+
+        assertThat(names[ResponseHeaders.LIMIT]).isEqualTo(HEADER_LIMIT + "-prefix_serviceA");
+        assertThat(names[ResponseHeaders.RESET]).isEqualTo(HEADER_RESET + "-prefix_serviceA");
+        assertThat(responseHeaders.verbose("prefix:serviceA")).isSameAs(names);
+    }
+
+    @Test
+    public void testValueOf() {
+        assertThat(ResponseHeaders.valueOf(7L)).isSameAs(ResponseHeaders.valueOf(7L)).isEqualTo("7");
+        assertThat(ResponseHeaders.valueOf(60_000L)).isEqualTo("60000");
+        assertThat(ResponseHeaders.valueOf(-1L)).isEqualTo("-1");
+        assertThat(ResponseHeaders.valueOf((Long) null)).isEqualTo("null");
+    }
+}
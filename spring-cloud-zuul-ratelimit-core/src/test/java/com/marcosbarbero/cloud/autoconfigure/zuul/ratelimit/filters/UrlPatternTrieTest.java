@@ -0,0 +1,42 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UrlPatternTrieTest {
+
+    private static final List<String> PATTERNS = Arrays.asList("/", "/servicea", "/servicea/", "/servicea/*",
+            "/servicea/**", "/servicea/**/test", "/servicea/*/test", "/servicea/test*", "/servicea/t?st",
+            "/servicea/{id}", "/servicea/{id:[0-9]+}/test", "/**", "/**/test", "/**/*.json", "servicea/**",
+            "/servicea/**/b/**/test", "/*/test/");
+
+    private static final List<String> PATHS = Arrays.asList("/", "/servicea", "/servicea/", "/servicea/test",
+            "/servicea/test/", "/servicea/tast", "/servicea/123/test", "/servicea/abc/test", "/servicea/a/b/c/test",
+            "/servicea/a/b/test", "/servicea/testing", "/servicea/data.json", "/serviceb/test", "/serviceb/test/",
+            "/servicea//test", "servicea/test", "/servicea/b/test");
+
+    private final AntPathMatcher antPathMatcher = new AntPathMatcher();
+
+    @Test
+    public void testMatchLikeAntPathMatcher() {
+        UrlPatternTrie trie = new UrlPatternTrie(PATTERNS);
+
+        for (String path : PATHS) {
+            boolean[] matched = trie.match(path);
+            for (int i = 0; i < PATTERNS.size(); i++) {
+                assertThat(matched[i]).as("%s matching %s", PATTERNS.get(i), path)
+                        .isEqualTo(antPathMatcher.match(PATTERNS.get(i), path));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchNoPatterns() {
+        assertThat(new UrlPatternTrie(Arrays.asList()).match("/servicea")).isEmpty();
+    }
+}
@@ -1,8 +1,9 @@
 package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.post;
 
-import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.REQUEST_START_TIME;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.CURRENT_REQUEST_STATE;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
@@ -16,6 +17,7 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimiter;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.RateLimitPostFilter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.RateLimitState;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DefaultRateLimitUtils;
 import com.netflix.zuul.context.RequestContext;
 import java.time.Duration;
@@ -56,6 +58,7 @@ public class RateLimitPostFilterTest {
         requestContext.setRequest(httpServletRequest);
         RequestContext.testSetCurrentContext(requestContext);
         RequestContextHolder.setRequestAttributes(requestAttributes);
+        when(rateLimiter.consume(anyList(), anyList(), any())).thenCallRealMethod();
         rateLimitProperties = new RateLimitProperties();
         UrlPathHelper urlPathHelper = new UrlPathHelper();
         RateLimitUtils rateLimitUtils = new DefaultRateLimitUtils(rateLimitProperties);
@@ -89,6 +92,7 @@ public class RateLimitPostFilterTest {
         rateLimitProperties.setEnabled(true);
         Policy defaultPolicy = new Policy();
         rateLimitProperties.getDefaultPolicyList().add(defaultPolicy);
+        setState(defaultPolicy, false);
 
         assertThat(target.shouldFilter()).isEqualTo(false);
     }
@@ -96,9 +100,9 @@ public class RateLimitPostFilterTest {
     @Test
     public void testShouldFilter() {
         rateLimitProperties.setEnabled(true);
-        when(httpServletRequest.getAttribute(REQUEST_START_TIME)).thenReturn(System.currentTimeMillis());
         Policy defaultPolicy = new Policy();
         rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(defaultPolicy));
+        setState(defaultPolicy, true);
 
         assertThat(target.shouldFilter()).isEqualTo(true);
     }
@@ -109,16 +113,48 @@ public class RateLimitPostFilterTest {
         verifyNoInteractions(rateLimiter);
     }
 
+    @Test
+    public void testRunLimitOnlyPolicy() {
+        rateLimitProperties.setEnabled(true);
+        Policy defaultPolicy = new Policy();
+        defaultPolicy.setLimit(10L);
+        rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(defaultPolicy));
+        setState(defaultPolicy, true);
+
+        target.run();
+        verifyNoInteractions(rateLimiter);
+    }
+
     @Test
     public void testRun() {
         rateLimitProperties.setEnabled(true);
-        when(httpServletRequest.getAttribute(REQUEST_START_TIME)).thenReturn(System.currentTimeMillis());
         Policy defaultPolicy = new Policy();
         defaultPolicy.setQuota(Duration.ofSeconds(2));
         rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(defaultPolicy));
+        setState(defaultPolicy, true);
         when(rateLimitKeyGenerator.key(any(), any(), any())).thenReturn("generatedKey");
 
         target.run();
         verify(rateLimiter).consume(eq(defaultPolicy), eq("generatedKey"), anyLong());
     }
+
+    @Test
+    public void testShouldFilterWithoutPreFilterState() {
+        rateLimitProperties.setEnabled(true);
+        Policy defaultPolicy = new Policy();
+        defaultPolicy.setQuota(Duration.ofSeconds(2));
+        rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(defaultPolicy));
+
+        assertThat(target.shouldFilter()).isEqualTo(false);
+        target.run();
+        verifyNoInteractions(rateLimiter, routeLocator);
+    }
+
+    private void setState(Policy policy, boolean started) {
+        RateLimitState state = new RateLimitState(null, Lists.newArrayList(policy));
+        if (started) {
+            state.start();
+        }
+        RequestContext.getCurrentContext().put(CURRENT_REQUEST_STATE, state);
+    }
 }
\ No newline at end of file
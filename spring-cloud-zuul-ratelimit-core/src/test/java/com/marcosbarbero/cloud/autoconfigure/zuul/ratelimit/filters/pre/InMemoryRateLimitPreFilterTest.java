@@ -0,0 +1,14 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.pre;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.InMemoryRateLimiter;
+import org.junit.jupiter.api.BeforeEach;
+
+public class InMemoryRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
+
+    @BeforeEach
+    @Override
+    public void setUp() {
+        this.setRateLimiter(new InMemoryRateLimiter(100));
+        super.setUp();
+    }
+}
@@ -9,7 +9,11 @@ import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.Ra
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties.Policy.MatchType;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitType;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RejectionMode;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.ResponseHeadersVerbosity;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.repository.BlockedKeys;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.RateLimitPreFilter;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.RateLimitState;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.filters.commons.TestRouteLocator;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.DefaultRateLimitUtils;
 import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitExceededEvent;
@@ -22,23 +26,37 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.cloud.context.scope.refresh.RefreshScopeRefreshedEvent;
+import org.springframework.cloud.netflix.zuul.RoutesRefreshedEvent;
 import org.springframework.cloud.netflix.zuul.filters.Route;
+import org.springframework.cloud.netflix.zuul.filters.RouteLocator;
 import org.springframework.cloud.netflix.zuul.filters.support.FilterConstants;
 import org.springframework.cloud.netflix.zuul.metrics.EmptyCounterFactory;
 import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.web.context.request.RequestAttributes;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.util.UrlPathHelper;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
 import java.util.Collections;
 
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.CURRENT_REQUEST_STATE;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_LIMIT;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_REMAINING;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_RESET;
+import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.RATE_LIMIT_EXCEEDED;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 public class RateLimitPreFilterTest {
@@ -75,6 +93,7 @@ public class RateLimitPreFilterTest {
         requestContext.setResponse(httpServletResponse);
         RequestContext.testSetCurrentContext(requestContext);
         RequestContextHolder.setRequestAttributes(requestAttributes);
+        when(rateLimiter.consume(anyList(), anyList(), any())).thenCallRealMethod();
         rateLimitProperties = new RateLimitProperties();
         rateLimitProperties.setAddResponseHeaders(false);
         UrlPathHelper urlPathHelper = new UrlPathHelper();
@@ -117,6 +136,23 @@ public class RateLimitPreFilterTest {
         assertThat(target.shouldFilter()).isEqualTo(false);
     }
 
+    @Test
+    public void testShouldFilterOnDeniedOrigin() {
+        rateLimitProperties.setEnabled(true);
+        rateLimitProperties.getDenyRequest().setOrigins(Lists.newArrayList("10.0.0.0/8", "127.0.0.0/24"));
+
+        assertThrows(RateLimitExceededException.class, () -> target.shouldFilter());
+        assertThat(RequestContext.getCurrentContext().getResponseStatusCode()).isEqualTo(403);
+    }
+
+    @Test
+    public void testShouldFilterOnNotDeniedOrigin() {
+        rateLimitProperties.setEnabled(true);
+        rateLimitProperties.getDenyRequest().setOrigins(Lists.newArrayList("10.0.0.0/8", "::1"));
+
+        assertThat(target.shouldFilter()).isEqualTo(false);
+    }
+
     @Test
     public void testShouldFilter() {
         rateLimitProperties.setEnabled(true);
@@ -150,4 +186,169 @@ public class RateLimitPreFilterTest {
         assertNotNull(rateLimitEvent);
         assertEquals(policy, rateLimitEvent.getPolicy());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRunKeepsState() {
+        rateLimitProperties.setEnabled(true);
+        Policy policy = new Policy();
+        policy.setQuota(Duration.ofSeconds(2));
+        rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(policy));
+        String key = "rate-limit-application_servicea";
+        when(rateLimitKeyGenerator.key(any(), any(), eq(policy))).thenReturn(key);
+        when(rateLimiter.consume(policy, key, null)).thenReturn(new Rate(key, null, 2000L, 60L, null));
+
+        assertThat(target.shouldFilter()).isEqualTo(true);
+        target.run();
+        target.run();
+
+        RateLimitState state = RateLimitState.current();
+        assertThat(state.getRoute().getId()).isEqualTo("servicea");
+        assertThat(state.getPolicies()).containsExactly(policy);
+        assertThat(state.getKeys()).containsExactly(key);
+        assertThat(state.isStarted()).isTrue();
+        verify(rateLimitKeyGenerator, times(1)).key(any(), any(), eq(policy));
+    }
+
+    @Test
+    public void testRunMostRestrictiveHeaders() {
+        rateLimitProperties.setEnabled(true);
+        rateLimitProperties.setResponseHeaders(ResponseHeadersVerbosity.MOST_RESTRICTIVE);
+        Policy perSecond = new Policy();
+        perSecond.setLimit(10L);
+        Policy perHour = new Policy();
+        perHour.setLimit(100L);
+        rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(perSecond, perHour));
+        when(rateLimitKeyGenerator.key(any(), any(), eq(perSecond))).thenReturn("perSecond");
+        when(rateLimitKeyGenerator.key(any(), any(), eq(perHour))).thenReturn("perHour");
+        when(rateLimiter.consume(perSecond, "perSecond", null)).thenReturn(new Rate("perSecond", 8L, null, 1000L, null));
+        when(rateLimiter.consume(perHour, "perHour", null)).thenReturn(new Rate("perHour", 5L, null, 60000L, null));
+
+        assertThat(target.shouldFilter()).isEqualTo(true);
+        target.run();
+
+        verify(httpServletResponse).setHeader(HEADER_LIMIT, "100");
+        verify(httpServletResponse).setHeader(HEADER_REMAINING, "5");
+        verify(httpServletResponse).setHeader(HEADER_RESET, "60000");
+        verifyNoMoreInteractions(httpServletResponse);
+    }
+
+    @Test
+    public void testShouldFilterReadsSnapshotUntilRefresh() {
+        rateLimitProperties.setEnabled(true);
+        rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(new Policy()));
+        assertThat(target.shouldFilter()).isEqualTo(true);
+
+        rateLimitProperties.setEnabled(false);
+        assertThat(target.shouldFilter()).isEqualTo(true);
+
+        target.onRefresh(new RefreshScopeRefreshedEvent());
+        assertThat(target.shouldFilter()).isEqualTo(false);
+
+        rateLimitProperties.setEnabled(true);
+        rateLimitProperties.getDenyRequest().setOrigins(Lists.newArrayList("10.0.0.0/99"));
+        target.onRefresh(new RefreshScopeRefreshedEvent());
+        assertThat(target.shouldFilter()).isEqualTo(false);
+    }
+
+    @Test
+    public void testRouteLookedUpOncePerPath() {
+        rateLimitProperties.setEnabled(true);
+        rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(new Policy()));
+        RouteLocator routeLocator = mock(RouteLocator.class);
+        Route route = new Route("servicea", "/test", "servicea", "/servicea", null, Collections.emptySet());
+        when(routeLocator.getMatchingRoute("/servicea/test")).thenReturn(route);
+        target = new RateLimitPreFilter(rateLimitProperties, routeLocator, new UrlPathHelper(), rateLimiter,
+                rateLimitKeyGenerator, new DefaultRateLimitUtils(rateLimitProperties), eventPublisher);
+
+        for (int i = 0; i < 3; i++) {
+            RequestContext.getCurrentContext().remove(CURRENT_REQUEST_STATE);
+            assertThat(target.shouldFilter()).isEqualTo(true);
+            assertThat(RateLimitState.current().getRoute()).isSameAs(route);
+        }
+        verify(routeLocator, times(1)).getMatchingRoute("/servicea/test");
+
+        target.onRoutesRefreshed(new RoutesRefreshedEvent(routeLocator));
+        RequestContext.getCurrentContext().remove(CURRENT_REQUEST_STATE);
+        assertThat(target.shouldFilter()).isEqualTo(true);
+        verify(routeLocator, times(2)).getMatchingRoute("/servicea/test");
+    }
+
+    @Test
+    public void testUnmatchedPathNotCached() {
+        rateLimitProperties.setEnabled(true);
+        rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(new Policy()));
+        RouteLocator routeLocator = mock(RouteLocator.class);
+        target = new RateLimitPreFilter(rateLimitProperties, routeLocator, new UrlPathHelper(), rateLimiter,
+                rateLimitKeyGenerator, new DefaultRateLimitUtils(rateLimitProperties), eventPublisher);
+
+        for (int i = 0; i < 2; i++) {
+            RequestContext.getCurrentContext().remove(CURRENT_REQUEST_STATE);
+            target.shouldFilter();
+            assertThat(RateLimitState.current().getRoute()).isNull();
+        }
+        verify(routeLocator, times(2)).getMatchingRoute("/servicea/test");
+    }
+
+    @Test
+    public void testRunRecordsBlockedRequest() {
+        rateLimitProperties.setEnabled(true);
+        Policy byOrigin = new Policy();
+        byOrigin.setLimit(1L);
+        byOrigin.getType().add(new MatchType(RateLimitType.ORIGIN, null));
+        Policy byUser = new Policy();
+        byUser.setLimit(1L);
+        byUser.getType().add(new MatchType(RateLimitType.USER, null));
+        when(httpServletRequest.getMethod()).thenReturn("GET");
+        when(rateLimitKeyGenerator.key(any(), any(), any())).thenReturn("key");
+        when(rateLimiter.consume(any(Policy.class), eq("key"), eq(null))).thenReturn(new Rate("key", -1L, null, 5000L, null));
+        BlockedKeys blockedKeys = new BlockedKeys();
+        target = new RateLimitPreFilter(rateLimitProperties, new TestRouteLocator(Collections.emptyList(),
+                Collections.emptyList()), new UrlPathHelper(), rateLimiter, rateLimitKeyGenerator,
+                new DefaultRateLimitUtils(rateLimitProperties), eventPublisher, null, blockedKeys);
+        String blockedKey = BlockedKeys.requestKey("GET", "127.0.0.1", "/servicea/test");
+
+        rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(byUser));
+        assertThrows(RateLimitExceededException.class, () -> target.run());
+        assertThat(blockedKeys.remaining(blockedKey)).isZero();
+
+        RequestContext.getCurrentContext().remove(CURRENT_REQUEST_STATE);
+        rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(byOrigin));
+        target.onRefresh(new RefreshScopeRefreshedEvent());
+        assertThrows(RateLimitExceededException.class, () -> target.run());
+        assertThat(blockedKeys.remaining(blockedKey)).isPositive();
+    }
+
+    @Test
+    public void testRunResponseRejectionMode() throws Exception {
+        rateLimitProperties.setEnabled(true);
+        rateLimitProperties.setRejectionMode(RejectionMode.RESPONSE);
+        Policy policy = new Policy();
+        policy.setLimit(1L);
+        rateLimitProperties.setDefaultPolicyList(Lists.newArrayList(policy));
+        when(rateLimitKeyGenerator.key(any(), any(), eq(policy))).thenReturn("key");
+        when(rateLimiter.consume(policy, "key", null)).thenReturn(new Rate("key", -1L, null, 60L, null));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContext.getCurrentContext().setResponse(response);
+
+        assertThat(target.shouldFilter()).isEqualTo(true);
+        assertThat(target.run()).isNull();
+
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getContentAsString()).isEqualTo("{\"status\":429,\"error\":\"Too Many Requests\"}");
+        assertThat(RequestContext.getCurrentContext().sendZuulResponse()).isFalse();
+        assertThat(RequestContext.getCurrentContext().get(RATE_LIMIT_EXCEEDED)).isEqualTo("true");
+    }
+
+    @Test
+    public void testShouldFilterOnDeniedOriginResponseRejectionMode() throws Exception {
+        rateLimitProperties.setEnabled(true);
+        rateLimitProperties.setRejectionMode(RejectionMode.RESPONSE);
+        rateLimitProperties.getDenyRequest().setOrigins(Lists.newArrayList("127.0.0.0/24"));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContext.getCurrentContext().setResponse(response);
+
+        assertThat(target.shouldFilter()).isEqualTo(false);
+        assertThat(response.getStatus()).isEqualTo(403);
+        assertThat(response.getContentAsString()).contains("Forbidden");
+    }
+}
@@ -10,6 +10,7 @@ import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 import static com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support.RateLimitConstants.HEADER_REMAINING;
+import static java.util.Arrays.asList;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
@@ -37,8 +38,8 @@ public class RedisRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
     @Override
     @SuppressWarnings("unchecked")
     public void testRateLimitExceedCapacity() throws Exception {
-        doReturn(3L)
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
+        doReturn(asList(3L, 1000L, 0L, 1000L))
+                .when(redisTemplate).execute(any(), anyList(), any());
 
         super.testRateLimitExceedCapacity();
     }
@@ -47,8 +48,8 @@ public class RedisRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
     @Override
     @SuppressWarnings("unchecked")
     public void testRateLimit() throws Exception {
-        doReturn(1L, 2L)
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
+        doReturn(asList(1L, 1000L, 0L, 1000L), asList(2L, 1000L, 0L, 1000L))
+                .when(redisTemplate).execute(any(), anyList(), any());
 
 
         this.request.setRequestURI("/serviceA");
@@ -66,8 +67,8 @@ public class RedisRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
 
         TimeUnit.SECONDS.sleep(2);
 
-        doReturn(1L)
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
+        doReturn(asList(1L, 1000L, 0L, 1000L))
+                .when(redisTemplate).execute(any(), anyList(), any());
 
         this.filter.run();
         remaining = this.response.getHeader(HEADER_REMAINING + key);
@@ -76,8 +77,8 @@ public class RedisRateLimitPreFilterTest extends BaseRateLimitPreFilterTest {
 
     @Test
     public void testShouldReturnCorrectRateRemainingValue() {
-        doReturn(1L, 2L)
-                .when(redisTemplate).execute(any(), anyList(), anyString(), anyString());
+        doReturn(asList(1L, 1000L, 0L, 1000L), asList(2L, 1000L, 0L, 1000L))
+                .when(redisTemplate).execute(any(), anyList(), any());
 
         this.request.setRequestURI("/serviceA");
         this.request.setRemoteAddr("10.0.0.100");
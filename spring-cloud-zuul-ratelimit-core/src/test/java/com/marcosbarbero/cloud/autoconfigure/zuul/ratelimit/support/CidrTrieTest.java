@@ -0,0 +1,118 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CidrTrieTest {
+
+    private final CidrTrie trie = new CidrTrie(Arrays.asList("10.0.0.0/8", "10.1.0.0/16", "192.168.0.1",
+            "172.16.0.1/32", "2001:db8::/32", "somedomain.com", "0.0.0.0/0"));
+
+    @Test
+    public void testMatchIpv4() {
+        assertThat(trie.match(address("10.1.2.3"))).containsExactly(true, true, false, false, false, false, true);
+        assertThat(trie.match(address("10.2.2.3"))).containsExactly(true, false, false, false, false, false, true);
+        assertThat(trie.match(address("192.168.0.1"))).containsExactly(false, false, true, false, false, false, true);
+        assertThat(trie.match(address("172.16.0.1"))).containsExactly(false, false, false, true, false, false, true);
+    }
+
+    @Test
+    public void testMatchIpv6() {
+        assertThat(trie.match(address("2001:db8:1::1"))).containsExactly(false, false, false, false, true, false, false);
+        assertThat(trie.match(address("2001:db9::1"))).containsExactly(false, false, false, false, false, false, false);
+        assertThat(trie.match(address("::ffff:10.0.0.1"))).containsExactly(true, false, false, false, false, false, true);
+    }
+
+    @Test
+    public void testMatchValue() {
+        assertThat(trie.match(address("somedomain.com"))).containsExactly(false, false, false, false, false, true, false);
+        assertThat(trie.match(address("unknown"))).containsOnly(false);
+    }
+
+    @Test
+    public void testContains() {
+        CidrTrie denied = new CidrTrie(Arrays.asList("10.0.0.0/8", "2001:db8::/32", "192.168.0.1", "somedomain.com"));
+
+        assertThat(denied.contains(address("10.0.0.0"))).isTrue();
+        assertThat(denied.contains(address("10.255.255.255"))).isTrue();
+        assertThat(denied.contains(address("11.0.0.0"))).isFalse();
+        assertThat(denied.contains(address("2001:db8:ffff::"))).isTrue();
+        assertThat(denied.contains(address("192.168.0.1"))).isTrue();
+        assertThat(denied.contains(address("192.168.0.2"))).isFalse();
+        assertThat(denied.contains(address("somedomain.com"))).isTrue();
+        assertThat(new CidrTrie(Collections.emptyList()).contains(address("10.0.0.1"))).isFalse();
+    }
+
+    @Test
+    public void testContainsSingleIpv6Address() {
+        CidrTrie denied = new CidrTrie(Arrays.asList("2001:db8::1", "10.0.0.1"));
+
+        assertThat(denied.contains(address("2001:db8::1"))).isTrue();
+        assertThat(denied.contains(address("2001:db8:0:0:0:0:0:1"))).isTrue();
+        assertThat(denied.contains(address("2001:DB8::0001"))).isTrue();
+        assertThat(denied.contains(address("2001:db8::2"))).isFalse();
+        assertThat(denied.match(address("2001:db8:0:0:0:0:0:1"))).containsExactly(true, false);
+    }
+
+    @Test
+    public void testContainsIpv4MappedAddress() {
+        CidrTrie denied = new CidrTrie(Arrays.asList("10.0.0.1", "::ffff:192.168.0.1"));
+
+        assertThat(denied.contains(address("::ffff:10.0.0.1"))).isTrue();
+        assertThat(denied.contains(address("0:0:0:0:0:ffff:a00:1"))).isTrue();
+        assertThat(denied.contains(address("192.168.0.1"))).isTrue();
+        assertThat(denied.contains(address("::ffff:10.0.0.2"))).isFalse();
+    }
+
+    @Test
+    public void testMatchesSingleAddress() {
+        assertThat(CidrTrie.matches("2001:db8::1", address("2001:db8:0:0:0:0:0:1"))).isTrue();
+        assertThat(CidrTrie.matches("2001:db8::1", address("2001:db8::2"))).isFalse();
+        assertThat(CidrTrie.matches("10.0.0.1", address("::ffff:10.0.0.1"))).isTrue();
+        assertThat(CidrTrie.matches("::ffff:10.0.0.1", address("10.0.0.1"))).isTrue();
+        assertThat(CidrTrie.matches("10.0.0.1", address("unknown"))).isFalse();
+    }
+
+    @Test
+    public void testMatches() {
+        assertThat(CidrTrie.matches("127.0.0.8/29", address("127.0.0.10"))).isTrue();
+        assertThat(CidrTrie.matches("127.0.0.8/29", address("127.0.0.16"))).isFalse();
+        assertThat(CidrTrie.matches("fe80::/10", address("fe80::1"))).isTrue();
+        assertThat(CidrTrie.matches("fe80::/10", address("127.0.0.1"))).isFalse();
+        assertThat(CidrTrie.matches("127.0.0.8/29", address("unknown"))).isFalse();
+        assertThat(CidrTrie.matches("unknown", address("unknown"))).isTrue();
+    }
+
+    @Test
+    public void testInvalidCidr() {
+        assertThrows(IllegalArgumentException.class, () -> new CidrTrie(Collections.singletonList("10.0.0.0/33")));
+        assertThrows(IllegalArgumentException.class, () -> new CidrTrie(Collections.singletonList("host/8")));
+        assertThrows(IllegalArgumentException.class, () -> new CidrTrie(Collections.singletonList("10.0.0.0/a")));
+    }
+
+    @Test
+    public void testClientAddressCachedInRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.1");
+        DefaultRateLimitUtils rateLimitUtils = new DefaultRateLimitUtils(new RateLimitProperties());
+
+        ClientAddress clientAddress = ClientAddress.of(request, rateLimitUtils);
+        request.setRemoteAddr("10.0.0.2");
+
+        assertThat(ClientAddress.of(request, rateLimitUtils)).isSameAs(clientAddress);
+        assertThat(clientAddress.getValue()).isEqualTo("10.0.0.1");
+    }
+
+    private static ClientAddress address(String value) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(value);
+        return ClientAddress.of(request, new DefaultRateLimitUtils(new RateLimitProperties()));
+    }
+}
@@ -0,0 +1,44 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.cloud.netflix.zuul.filters.support.FilterConstants.X_FORWARDED_FOR_HEADER;
+
+public class DefaultRateLimitUtilsTest {
+
+    @Test
+    public void testForwardedAddressLeftmost() {
+        String header = "10.0.0.1";
+        assertThat(DefaultRateLimitUtils.forwardedAddress(header, 0)).isSameAs(header);
+        assertThat(DefaultRateLimitUtils.forwardedAddress(" 10.0.0.1 , 10.0.0.2", 0)).isEqualTo("10.0.0.1");
+        assertThat(DefaultRateLimitUtils.forwardedAddress("", 0)).isEmpty();
+    }
+
+    @Test
+    public void testForwardedAddressDepth() {
+        String header = "10.0.0.1, 10.0.0.2,10.0.0.3";
+        assertThat(DefaultRateLimitUtils.forwardedAddress(header, 1)).isEqualTo("10.0.0.3");
+        assertThat(DefaultRateLimitUtils.forwardedAddress(header, 2)).isEqualTo("10.0.0.2");
+        assertThat(DefaultRateLimitUtils.forwardedAddress(header, 3)).isEqualTo("10.0.0.1");
+        assertThat(DefaultRateLimitUtils.forwardedAddress(header, 4)).isEqualTo("10.0.0.1");
+        assertThat(DefaultRateLimitUtils.forwardedAddress("10.0.0.1", 2)).isEqualTo("10.0.0.1");
+    }
+
+    @Test
+    public void testGetRemoteAddressTrustedProxyDepth() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setBehindProxy(true);
+        properties.setTrustedProxyDepth(1);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr("10.0.0.9");
+
+        DefaultRateLimitUtils rateLimitUtils = new DefaultRateLimitUtils(properties);
+        assertThat(rateLimitUtils.getRemoteAddress(request)).isEqualTo("10.0.0.9");
+
+        request.addHeader(X_FORWARDED_FOR_HEADER, "spoofed, 10.0.0.1");
+        assertThat(rateLimitUtils.getRemoteAddress(request)).isEqualTo("10.0.0.1");
+    }
+}
@@ -0,0 +1,95 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DenyListFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRead() throws IOException {
+        Path file = write("# blocklist\n10.0.0.0/8\r\n\n  192.168.0.1  \n2001:db8::/32");
+
+        assertThat(DenyListFile.read(file)).containsExactly("10.0.0.0/8", "192.168.0.1", "2001:db8::/32");
+    }
+
+    @Test
+    public void testContains() throws IOException {
+        try (DenyListFile denyListFile = new DenyListFile(write("10.0.0.0/8\n192.168.0.1\n"), Duration.ofHours(1))) {
+            assertThat(denyListFile.size()).isEqualTo(2);
+            assertThat(denyListFile.contains(address("10.1.1.1"))).isTrue();
+            assertThat(denyListFile.contains(address("192.168.0.1"))).isTrue();
+            assertThat(denyListFile.contains(address("192.168.0.2"))).isFalse();
+        }
+    }
+
+    @Test
+    public void testReload() throws IOException {
+        Path file = write("10.0.0.0/8\n");
+        try (DenyListFile denyListFile = new DenyListFile(file, Duration.ofHours(1))) {
+            rewrite(file, "192.168.0.0/16\n");
+            denyListFile.reload();
+
+            assertThat(denyListFile.contains(address("10.1.1.1"))).isFalse();
+            assertThat(denyListFile.contains(address("192.168.1.1"))).isTrue();
+        }
+    }
+
+    @Test
+    public void testReloadInvalidKeepsPreviousList() throws IOException {
+        Path file = write("10.0.0.0/8\n");
+        try (DenyListFile denyListFile = new DenyListFile(file, Duration.ofHours(1))) {
+            rewrite(file, "192.168.0.0/99\n");
+            denyListFile.reload();
+
+            assertThat(denyListFile.contains(address("10.1.1.1"))).isTrue();
+        }
+    }
+
+    @Test
+    public void testMissingFile() {
+        try (DenyListFile denyListFile = new DenyListFile(directory.resolve("missing"), Duration.ofHours(1))) {
+            assertThat(denyListFile.size()).isZero();
+            assertThat(denyListFile.contains(address("10.1.1.1"))).isFalse();
+        }
+    }
+
+    @Test
+    public void testInvalidCheckInterval() throws IOException {
+        Path file = write("10.0.0.0/8\n");
+
+        assertThatThrownBy(() -> new DenyListFile(file, Duration.ZERO))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("at least 1ms");
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.write(directory.resolve("deny-list"), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void rewrite(Path file, String content) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 1000));
+    }
+
+    private static ClientAddress address(String value) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(value);
+        return ClientAddress.of(request, new DefaultRateLimitUtils(new RateLimitProperties()));
+    }
+}
@@ -0,0 +1,73 @@
+package com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.support;
+
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.RateLimitUtils;
+import com.marcosbarbero.cloud.autoconfigure.zuul.ratelimit.config.properties.RateLimitProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class RequestIdentityTest {
+
+    @Test
+    public void testResolvedOncePerRequest() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/Some/Path");
+        RateLimitUtils rateLimitUtils = mock(RateLimitUtils.class);
+        when(rateLimitUtils.getRemoteAddress(request)).thenReturn("10.0.0.1");
+        when(rateLimitUtils.getUser(request)).thenReturn("user");
+        when(rateLimitUtils.getUserRoles()).thenReturn(Collections.singleton("ADMIN"));
+
+        RequestIdentity identity = RequestIdentity.of(request, rateLimitUtils);
+        verifyNoInteractions(rateLimitUtils);
+
+        for (int i = 0; i < 2; i++) {
+            assertThat(RequestIdentity.of(request, rateLimitUtils)).isSameAs(identity);
+            assertThat(identity.getRemoteAddress()).isEqualTo("10.0.0.1");
+            assertThat(ClientAddress.of(request, rateLimitUtils)).isSameAs(identity.getClientAddress());
+            assertThat(identity.getUser()).isEqualTo("user");
+            assertThat(identity.getUserRoles()).containsExactly("ADMIN");
+            assertThat(identity.getMethod()).isEqualTo("GET");
+            assertThat(identity.getLowerCaseRequestUri()).isEqualTo("/some/path");
+        }
+        verify(rateLimitUtils, times(1)).getRemoteAddress(request);
+        verify(rateLimitUtils, times(1)).getUser(request);
+        verify(rateLimitUtils, times(1)).getUserRoles();
+    }
+
+    @Test
+    public void testNotSharedAcrossRequests() {
+        RateLimitUtils rateLimitUtils = mock(RateLimitUtils.class);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        assertThat(RequestIdentity.of(new MockHttpServletRequest(), rateLimitUtils))
+                .isNotSameAs(RequestIdentity.of(request, rateLimitUtils));
+    }
+
+    @Test
+    public void testNotSharedWithWrapper() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        HttpServletRequestWrapper wrapper = new HttpServletRequestWrapper(request) {
+            @Override
+            public String getRemoteUser() {
+                return "user";
+            }
+        };
+        RateLimitUtils rateLimitUtils = new DefaultRateLimitUtils(new RateLimitProperties());
+
+        RequestIdentity raw = RequestIdentity.of(request, rateLimitUtils);
+        assertThat(raw.getUser()).isEqualTo("anonymous");
+
+        RequestIdentity wrapped = RequestIdentity.of(wrapper, rateLimitUtils);
+        assertThat(wrapped).isNotSameAs(raw);
+        assertThat(wrapped.getUser()).isEqualTo("user");
+        assertThat(RequestIdentity.of(wrapper, rateLimitUtils)).isSameAs(wrapped);
+    }
+}